@@ -6,4 +6,5 @@
  */
 module Sudoku {
 	requires java.desktop;
+	requires static jdk.incubator.vector;
 }
\ No newline at end of file
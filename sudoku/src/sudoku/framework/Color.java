@@ -2,15 +2,16 @@ package sudoku.framework;
 
 /**
  * Represents RGB colors.
- * RGB values are stored in a 3-position array, with values in the interval [0, 255].
- * rgb[0] - Red
- * rgb[1] - Green
- * rgb[2] - Blue
+ * RGB values are packed in a single ARGB integer (alpha always 255), as
+ * stored in images, with values in the interval [0, 255].
+ * bits 16-23 - Red
+ * bits 8-15 - Green
+ * bits 0-7 - Blue
  */
 
 public class Color {
 
-	private final int[] rgb; // @color
+	private final int argb; // @color
 
 	/**
 	 * Creates an RGB color. Provided values have to 
@@ -20,35 +21,47 @@ public class Color {
 		if(!valid(r) || !valid(g) || !valid(b))
 			throw new IllegalArgumentException("invalid RGB values: " + r + ", " + g + ", " + b);
 		
-		this.rgb = new int[] {r, g, b};
+		this.argb = ImageUtil.encodeRgbUnchecked(r, g, b);
+	}
+
+	/* Any pixel is a valid color, so nothing is checked here. */
+	Color(int argb) {
+		this.argb = 0xFF000000 | argb;
+	}
+
+	/**
+	 * The color as an ARGB pixel.
+	 */
+	public int getArgb() {
+		return argb;
 	}
 
 	/**
 	 * Red value [0, 255]
 	 */
 	public int getR() {
-		return rgb[0];
+		return ImageUtil.red(argb);
 	}
 
 	/**
 	 * Green value [0, 255]
 	 */
 	public int getG() {
-		return rgb[1];
+		return ImageUtil.green(argb);
 	}
 
 	/**
 	 * Blue value [0, 255]
 	 */
 	public int getB() {
-		return rgb[2];
+		return ImageUtil.blue(argb);
 	}
 
 	/**
 	 * Obtains the luminance in the interval [0, 255].
 	 */
 	public int getLuminance() {
-		return (int) Math.round(rgb[0]*.21 + rgb[1]*.71 + rgb[2]*.08);
+		return ImageUtil.luminanceUnchecked(argb);
 	}
 
 	public static boolean valid(int value) {
@@ -1,77 +1,152 @@
 package sudoku.framework;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 /**
  * Represents color images.
- * Image data is represented as a matrix:
- * - the number of lines corresponds to the image height (data.length)
- * - the length of the lines corresponds to the image width (data[*].length)
+ * Image data is represented as a single array, row after row:
+ * - pixel (x, y) is at data[y * width + x]
  * - pixel color is encoded as integers (ARGB)
+ * The array is the raster of a TYPE_INT_ARGB BufferedImage, so the image is
+ * written to a file without copying its pixels.
  */
 
 public class ColorImage {
 
-	private int[][] data; // @colorimage
+	private final BufferedImage image;
+	private final int[] data; // @colorimage
+	private final int width, height;
 
 
 	// Construtors
 
 	public ColorImage(int width, int height) {
-		data = new int[height][width];
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		this.width = width;
+		this.height = height;
 	}
 
 	public ColorImage(String file) {
-		this.data = ImageUtil.readColorImage(file);
+		this(ImageUtil.readImage(file));
+	}
+
+	/* Same pixels as readColorImage, converted in bulk straight into the raster. */
+	private ColorImage(BufferedImage img) {
+		this(img.getWidth(), img.getHeight());
+		int[] pixels = ImageUtil.argbPixels(img);
+
+		for (int i = 0; i < data.length; i++)
+			data[i] = 0xFF000000 | pixels[i];
 	}
 
 	public ColorImage(int[][] data) {
-		this.data = data;
+		this(data[0].length, data.length);
+		for (int y = 0; y < height; y++)
+			System.arraycopy(data[y], 0, this.data, y * width, width);
 	}
 
 	public ColorImage(int width, int height, Color color) {
-		data = new int[height][width];
-
-		for (int x = 0; x < this.getWidth(); x++) {
-			for (int y = 0; y < this.getHeight(); y++) {
-				this.setColor(x, y, color);
-			}
-		}
+		this(width, height);
+		java.util.Arrays.fill(data, color.getArgb());
 	}
 
 	// Metods
 	
 	public void writeImg() {
-		ImageUtil.writeImage(data, "./output.png", "png");
+		ImageUtil.writeImage(image, "./output.png", "png");
 	}
 
 	public int getWidth() {
-		return data[0].length;
+		return width;
 	}
 
 	public int getHeight() {
-		return data.length;
+		return height;
 	}
 
 	public void setColor(int x, int y, Color c) {
-		data[y][x] = ImageUtil.encodeRgb(c.getR(), c.getG(), c.getB());
+		data[y * width + x] = c.getArgb();
 	}
 	
+	/* Pixels become opaque, as when each one is copied with setColor. */
 	public void Copy(ColorImage c)
 	{
-		for (int y = 0; y < c.getHeight(); y++)
-			for (int x = 0; x < c.getWidth(); x++)
-				setColor(x, y, c.getColor(x, y));
+		Copy(c, 0, 0, c.width, c.height);
+	}
+
+	/* Copies the given rectangle of c (clipped to both images) to the same place, opaque. */
+	public void Copy(ColorImage c, int x, int y, int width, int height)
+	{
+		int x0 = Math.max(0, x), x1 = Math.min(x + width, Math.min(this.width, c.width));
+		int y1 = Math.min(y + height, Math.min(this.height, c.height));
+
+		for (int i = Math.max(0, y); i < y1; i++)
+			for (int j = x0; j < x1; j++)
+				data[i * this.width + j] = 0xFF000000 | c.data[i * c.width + j];
+	}
+
+	// Bulk operations on ARGB pixels; rectangles are clipped to the images
+
+	public void FillRect(int x, int y, int width, int height, Color c) {
+		FillRect(x, y, width, height, c.getArgb());
+	}
+
+	public void FillRect(int x, int y, int width, int height, int argb) {
+		int x0 = Math.max(0, x), x1 = Math.min(x + width, this.width);
+		int y1 = Math.min(y + height, this.height);
+
+		for (int i = Math.max(0, y); i < y1 && x0 < x1; i++)
+			java.util.Arrays.fill(data, i * this.width + x0, i * this.width + x1, argb);
+	}
+
+	/* Copies the width x height rectangle of c at (sx, sy) to (dx, dy). */
+	public void Blit(ColorImage c, int sx, int sy, int dx, int dy, int width, int height) {
+		int skipX = Math.max(Math.max(0, -sx), -dx), skipY = Math.max(Math.max(0, -sy), -dy);
+		int w = Math.min(width, Math.min(c.width - sx, this.width - dx)) - skipX;
+		int h = Math.min(height, Math.min(c.height - sy, this.height - dy));
+
+		for (int i = skipY; i < h && w > 0; i++)
+			System.arraycopy(c.data, (sy + i) * c.width + sx + skipX, data, (dy + i) * this.width + dx + skipX, w);
+	}
+
+	/* Like Blit, but draws c over this image by its alpha (source over). */
+	public void Composite(ColorImage c, int sx, int sy, int dx, int dy, int width, int height) {
+		int skipX = Math.max(Math.max(0, -sx), -dx), skipY = Math.max(Math.max(0, -sy), -dy);
+		int w = Math.min(width, Math.min(c.width - sx, this.width - dx));
+		int h = Math.min(height, Math.min(c.height - sy, this.height - dy));
+
+		for (int i = skipY; i < h; i++) {
+			int from = (sy + i) * c.width + sx, to = (dy + i) * this.width + dx;
+			for (int j = skipX; j < w; j++) {
+				int src = c.data[from + j];
+				int alpha = src >>> 24;
+				if (alpha == 255)
+					data[to + j] = src;
+				else if (alpha != 0)
+					data[to + j] = blend(src, data[to + j]);
+			}
+		}
+	}
+
+	private static int blend(int src, int dst) {
+		int alpha = src >>> 24, rest = ((dst >>> 24) * (255 - alpha) + 127) / 255, out = alpha + rest;
+		int pixel = out << 24;
+
+		for (int shift = 0; shift < 24; shift += 8)
+			pixel |= (((src >> shift & 0xFF) * alpha + (dst >> shift & 0xFF) * rest + out / 2) / out) << shift;
+		return pixel;
 	}
 	
 
 	public Color getColor(int x, int y) {
-		int[] rgb = ImageUtil.decodeRgb(data[y][x]);
-		return new Color(rgb[0], rgb[1], rgb[2]);
+		return new Color(data[y * width + x]);
 	}
 
 	// Text functions
 
-	public void drawText(int textX, int textY, String text, int textSize, Color textColor) {
+	public void drawText(int textX, int textY, CharSequence text, int textSize, Color textColor) {
 		drawText(textX, textY, text, textSize, textColor, false);
 	}
 
@@ -81,22 +156,27 @@ public class ColorImage {
 	}
 	
 	
-	private void drawText(int textX, int textY, String text, int textSize, Color textColor, boolean isCentered) {
+	private void drawText(int textX, int textY, CharSequence text, int textSize, Color textColor, boolean isCentered) {
+		/* Digits come pre-rendered from the atlas, so only their pixels are touched. */
+		if (!isCentered && GlyphAtlas.covers(text)) {
+			GlyphAtlas.get(textSize, textColor).draw(data, width, height, textX, textY, text);
+			return;
+		}
 		int r = 255 - textColor.getR();
 		int g = 255 - textColor.getG();
 		int b = 255 - textColor.getB();
 
 		Color maskColor = new Color(r, g, b);
 
-		int encodedMaskRGB = ImageUtil.encodeRgb(r, g, b);
+		int encodedMaskRGB = maskColor.getArgb();
 
-		int[][] aux = ImageUtil.createColorImageWithText(getWidth(), getHeight(), maskColor, textX, textY, text, textSize, textColor, isCentered);
+		int[][] aux = ImageUtil.createColorImageWithText(getWidth(), getHeight(), maskColor, textX, textY, text.toString(), textSize, textColor, isCentered);
 
 		for (int i = 0; i < aux.length; i++) {
 			for (int j = 0; j < aux[i].length; j++) {
 				int value = aux[i][j];
 				if(value != encodedMaskRGB) {
-					data[i][j] = aux[i][j];
+					data[i * width + j] = aux[i][j];
 				}
 			}
 		}
@@ -0,0 +1,136 @@
+package sudoku.framework;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The digits 0 to 9 rendered once for a text size and color, in the same
+ * font and position as ColorImage.drawText. Each digit is kept as runs of
+ * equal pixels, so drawing it fills a few short row segments instead of
+ * rendering text over a whole image. Atlases are cached and shared.
+ */
+final class GlyphAtlas {
+	private static final Map<Long, GlyphAtlas> CACHE = new ConcurrentHashMap<>();
+
+	/* Per digit, runs of 4 ints: row and first/last+1 column, relative to the text position, and color. */
+	private static volatile GlyphAtlas last;
+
+	private final int textSize, rgb;
+	private final int[][] runs = new int[10][];
+	private final int[] advance = new int[10];
+	private final int spaceAdvance;
+
+
+	/* The last atlas is checked first, so repeated text does not box a key. */
+	static GlyphAtlas get(int textSize, Color textColor) {
+		int rgb = textColor.getArgb();
+		GlyphAtlas atlas = last;
+
+		if (atlas == null || atlas.textSize != textSize || atlas.rgb != rgb)
+			last = atlas = CACHE.computeIfAbsent((long) textSize << 32 | rgb & 0xFFFFFFFFL, k -> new GlyphAtlas(textSize, textColor));
+		return atlas;
+	}
+
+
+	private GlyphAtlas(int textSize, Color textColor) {
+		Font font = new Font("Arial", Font.PLAIN, textSize);
+		int margin = textSize, width = 3 * textSize, height = 4 * textSize;
+		java.awt.Color mask = new java.awt.Color(255 - textColor.getR(), 255 - textColor.getG(), 255 - textColor.getB());
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = img.createGraphics();
+
+		this.textSize = textSize;
+		rgb = textColor.getArgb();
+
+		graphics.setFont(font);
+		FontMetrics fontMetrics = graphics.getFontMetrics();
+		FontRenderContext frc = new FontRenderContext(null, true, false);
+		int rHeight = (int) Math.round(font.getStringBounds("0", frc).getHeight());
+		int fHeight = fontMetrics.getHeight() - fontMetrics.getMaxAscent() + fontMetrics.getMaxDescent()
+				- fontMetrics.getLeading();
+		int baseline = rHeight - fHeight / 2;
+
+		spaceAdvance = fontMetrics.charWidth(' ');
+		for (int d = 0; d < 10; d++) {
+			graphics.setColor(mask);
+			graphics.fillRect(0, 0, width, height);
+			graphics.setColor(new java.awt.Color(textColor.getR(), textColor.getG(), textColor.getB()));
+			graphics.drawString(Integer.toString(d), margin, margin + baseline);
+			advance[d] = fontMetrics.charWidth('0' + d);
+			runs[d] = scan(img, mask.getRGB(), margin);
+		}
+		graphics.dispose();
+	}
+
+
+	private static int[] scan(BufferedImage img, int mask, int margin) {
+		int[] pixels = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+		int[] runs = new int[64];
+		int n = 0;
+
+		for (int y = 0; y < img.getHeight(); y++)
+			for (int x = 0; x < img.getWidth(); ) {
+				int v = pixels[y * img.getWidth() + x];
+				int end = x + 1;
+				while (end < img.getWidth() && pixels[y * img.getWidth() + end] == v)
+					end++;
+				if (v != mask) {
+					if (n + 4 > runs.length)
+						runs = Arrays.copyOf(runs, runs.length * 2);
+					runs[n++] = y - margin;
+					runs[n++] = x - margin;
+					runs[n++] = end - margin;
+					runs[n++] = 0xFF000000 | v;
+				}
+				x = end;
+			}
+		return Arrays.copyOf(runs, n);
+	}
+
+
+	/* Whether drawText of text can be done with this atlas (only digits and spaces). */
+	static boolean covers(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c != ' ' && (c < '0' || c > '9'))
+				return false;
+		}
+		return true;
+	}
+
+
+	/* How far drawing text moves the pen. */
+	int width(CharSequence text) {
+		int w = 0;
+
+		for (int i = 0; i < text.length(); i++)
+			w += text.charAt(i) == ' ' ? spaceAdvance : advance[text.charAt(i) - '0'];
+		return w;
+	}
+
+
+	/* Draws text, made of digits and spaces, with its top left corner at (x, y). */
+	void draw(int[] data, int width, int height, int x, int y, CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == ' ') {
+				x += spaceAdvance;
+				continue;
+			}
+			int[] r = runs[c - '0'];
+			for (int j = 0; j < r.length; j += 4) {
+				int row = y + r[j];
+				int from = Math.max(0, x + r[j + 1]), to = Math.min(width, x + r[j + 2]);
+				if (row >= 0 && row < height && from < to)
+					Arrays.fill(data, row * width + from, row * width + to, r[j + 3]);
+			}
+			x += advance[c - '0'];
+		}
+	}
+}
@@ -1,15 +1,16 @@
 package sudoku.framework;
 
 
+import java.awt.AlphaComposite;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.font.FontRenderContext;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 
@@ -18,6 +19,8 @@ import javax.imageio.ImageIO;
  */
 public class ImageUtil {
 
+	private static final Color WHITE = new Color(255, 255, 255);
+
 	/**
 	 * Checks whether the given values are valid as an RGB color.
 	 */
@@ -47,6 +50,13 @@ public class ImageUtil {
 	public static int encodeRgb(int r, int g, int b) {
 		validateRgb(r, g, b);
 
+		return encodeRgbUnchecked(r, g, b);
+	}
+
+	/**
+	 * Same as encodeRgb, for values already known to be valid.
+	 */
+	public static int encodeRgbUnchecked(int r, int g, int b) {
 		return 255 << 24 | r << 16 | g << 8 | b;
 	}
 
@@ -55,12 +65,32 @@ public class ImageUtil {
 	 * operation the encodeRgb(r, g, b) method.
 	 */
 	public static int[] decodeRgb(int value) {
-		int[] rgb = { (value >> 16) & 0xFF, (value >> 8) & 0xFF, value & 0xFF };
-		if (!validRgb(rgb[0], rgb[1], rgb[2]))
-			throw new IllegalArgumentException("Invalid value: " + value + ", resulted in " + Arrays.toString(rgb));
+		return decodeRgbUnchecked(value, new int[3]);
+	}
+
+	/**
+	 * Same as decodeRgb, writing into rgb instead of a new array. Masked
+	 * components are always valid, so nothing is checked.
+	 */
+	public static int[] decodeRgbUnchecked(int value, int[] rgb) {
+		rgb[0] = red(value);
+		rgb[1] = green(value);
+		rgb[2] = blue(value);
 		return rgb;
 	}
 
+	public static int red(int value) {
+		return (value >> 16) & 0xFF;
+	}
+
+	public static int green(int value) {
+		return (value >> 8) & 0xFF;
+	}
+
+	public static int blue(int value) {
+		return value & 0xFF;
+	}
+
 	/**
 	 * Obtains the luminance of an RGB color in the interval [0, 255].
 	 */
@@ -69,6 +99,13 @@ public class ImageUtil {
 		return (int) Math.round(r * .21 + g * .71 + b * .08);
 	}
 
+	/**
+	 * Luminance of an encoded color, without validation.
+	 */
+	public static int luminanceUnchecked(int value) {
+		return (int) Math.round(red(value) * .21 + green(value) * .71 + blue(value) * .08);
+	}
+
 	public static void validateFile(File file) {
 		if (!file.exists())
 			throw new IllegalArgumentException("file does not exist");
@@ -87,26 +124,14 @@ public class ImageUtil {
 	 * value set to true, whereas false otherwise.
 	 */
 	public static boolean[][] readBinaryImage(String imagePath) {
-		File file = new File(imagePath);
-		validateFile(file);
-		try {
-			BufferedImage img = ImageIO.read(file);
-			int[] pixels = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
-			boolean[][] data = new boolean[img.getHeight()][img.getWidth()];
-			int i = 0;
-			for (int y = 0; y < data.length; y++) {
-				for (int x = 0; x < data[y].length; x++) {
-					int v = pixels[i++];
-					int r = (v >> 16) & 0xFF;
-					int g = (v >> 8) & 0xFF;
-					int b = v & 0xFF;
-					data[y][x] = luminance(r, g, b) >= 128;
-				}
-			}
-			return data;
-		} catch (IOException e) {
-			throw new IllegalArgumentException(e.getMessage());
-		}
+		BufferedImage img = readImage(imagePath);
+		int[] pixels = argbPixels(img);
+		boolean[][] data = new boolean[img.getHeight()][img.getWidth()];
+		int i = 0;
+		for (int y = 0; y < data.length; y++)
+			for (int x = 0; x < data[y].length; x++)
+				data[y][x] = luminanceUnchecked(pixels[i++]) >= 128;
+		return data;
 	}
 
 	/**
@@ -121,28 +146,53 @@ public class ImageUtil {
 	 * 00000000 00000000 00000000 00000000 alpha red green blue
 	 */
 	public static int[][] readColorImage(String imagePath) {
+		BufferedImage img = readImage(imagePath);
+		int[] pixels = argbPixels(img);
+		int[][] data = new int[img.getHeight()][img.getWidth()];
+		int i = 0;
+		for (int y = 0; y < data.length; y++)
+			for (int x = 0; x < data[y].length; x++)
+				data[y][x] = 0xFF000000 | pixels[i++];
+		return data;
+	}
+
+	static BufferedImage readImage(String imagePath) {
 		File file = new File(imagePath);
 		validateFile(file);
 		try {
 			BufferedImage img = ImageIO.read(file);
-			int[] pixels = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
-			int[][] data = new int[img.getHeight()][img.getWidth()];
-			int i = 0;
-			for (int y = 0; y < data.length; y++) {
-				for (int x = 0; x < data[y].length; x++) {
-					int v = pixels[i++];
-					int r = (v >> 16) & 0xFF;
-					int g = (v >> 8) & 0xFF;
-					int b = v & 0xFF;
-					data[y][x] = encodeRgb(r, g, b);
-				}
-			}
-			return data;
+			if (img == null)
+				throw new IllegalArgumentException("unsupported image format: " + imagePath);
+			return img;
 		} catch (IOException e) {
 			throw new IllegalArgumentException(e.getMessage());
 		}
 	}
 
+	/**
+	 * All pixels of an image as ARGB, row after row. Images in the usual
+	 * RGB layouts are converted by a single blit into an ARGB raster rather
+	 * than by getRGB, which converts pixel by pixel through the color model.
+	 */
+	static int[] argbPixels(BufferedImage img) {
+		int w = img.getWidth(), h = img.getHeight();
+
+		switch (img.getType()) {
+		  case BufferedImage.TYPE_INT_ARGB:
+		  case BufferedImage.TYPE_INT_RGB:
+		  case BufferedImage.TYPE_3BYTE_BGR:
+		  case BufferedImage.TYPE_4BYTE_ABGR:
+			BufferedImage argb = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D graphics = argb.createGraphics();
+			graphics.setComposite(AlphaComposite.Src);
+			graphics.drawImage(img, 0, 0, null);
+			graphics.dispose();
+			return ((DataBufferInt) argb.getRaster().getDataBuffer()).getData();
+		  default:
+			return img.getRGB(0, 0, w, h, null, 0, w);
+		}
+	}
+
 	/**
 	 * Writes an image to a file given its pixel data and an image format (gif, jpg,
 	 * png). Pixel values are expected to be encoded as in the encodeRgb(...)
@@ -157,6 +207,16 @@ public class ImageUtil {
 			for (int x = 0; x < data[y].length; x++)
 				img.setRGB(x, y, data[y][x]);
 
+		writeImage(img, path, format);
+	}
+
+	/**
+	 * Writes an image to a file as it is, without copying its pixels.
+	 */
+	public static void writeImage(BufferedImage img, String path, String format) {
+		if (!format.matches("gif|jpg|png"))
+			throw new IllegalArgumentException("invalid format: " + format + " (valid values: gif, jpg, png)");
+
 		File file = new File(path);
 		try {
 			ImageIO.write(img, format, file);
@@ -165,6 +225,20 @@ public class ImageUtil {
 		}
 	}
 
+	/**
+	 * Horizontal advance of text as drawn by ColorImage.drawText, so text can
+	 * be drawn in pieces that line up with the whole.
+	 */
+	public static int textWidth(CharSequence text, int textSize) {
+		if (GlyphAtlas.covers(text))
+			return GlyphAtlas.get(textSize, WHITE).width(text);
+		Graphics2D graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+		graphics.setFont(new Font("Arial", Font.PLAIN, textSize));
+		int width = graphics.getFontMetrics().stringWidth(text.toString());
+		graphics.dispose();
+		return width;
+	}
+
 	public static int[][] createColorImageWithText(int width, int height, Color backgroundColor, int textX, int textY,
 			String text, int textSize, Color textColor, boolean isCentered) {
 		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
@@ -197,18 +271,12 @@ public class ImageUtil {
 		graphics.drawString(text, newX, newY + rHeight - fHeight / 2);
 
 	
-		int[] pixels = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+		int[] pixels = argbPixels(img);
 		int[][] data = new int[img.getHeight()][img.getWidth()];
 		int i = 0;
-		for (int y = 0; y < data.length; y++) {
-			for (int x = 0; x < data[y].length; x++) {
-				int v = pixels[i++];
-				int r = (v >> 16) & 0xFF;
-				int g = (v >> 8) & 0xFF;
-				int b = v & 0xFF;
-				data[y][x] = encodeRgb(r, g, b);
-			}
-		}
+		for (int y = 0; y < data.length; y++)
+			for (int x = 0; x < data[y].length; x++)
+				data[y][x] = 0xFF000000 | pixels[i++];
 		return data;
 
 	}
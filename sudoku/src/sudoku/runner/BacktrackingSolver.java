@@ -0,0 +1,221 @@
+package sudoku.runner;
+
+import java.util.function.Consumer;
+
+/**
+ * Depth-first solver over bitmask candidates. Before every branch it assigns
+ * naked singles (cells with one candidate) and hidden singles (numbers with
+ * one place left in a row, column or segment), then branches on the empty
+ * cell with fewest candidates.
+ */
+final class BacktrackingSolver implements SudokuSolver {
+	private static final int ALL = 0x1FF;
+	private static final int[][] HOUSES = new int[27][9];
+	private static final int[] ROW = new int[81], COLUMN = new int[81], SEGMENT = new int[81];
+
+	static {
+		for (int i = 0; i < 81; i++) {
+			int x = i % 9, y = i / 9, s = SudokuConstraints.segmentOf(x, y);
+			ROW[i] = y;
+			COLUMN[i] = x;
+			SEGMENT[i] = s;
+			HOUSES[y][x] = i;
+			HOUSES[9 + x][y] = i;
+			HOUSES[18 + s][(y % 3) * 3 + x % 3] = i;
+		}
+	}
+
+	private final int[] cells = new int[81];
+	private final int[] rows = new int[9], columns = new int[9], segments = new int[9];
+	private final int[] trail = new int[81];
+	private int trailSize;
+	private int found, limit;
+	private PackedBoard solution;
+	private Consumer<PackedBoard> action;
+	private final PackedBoard current = new PackedBoard();
+
+
+	@Override
+	public boolean solve(PackedBoard b, PackedBoard solution) {
+		return run(b, 1, solution, null) == 1;
+	}
+
+
+	@Override
+	public int countSolutions(PackedBoard b, int limit) {
+		return run(b, limit, null, null);
+	}
+
+
+	@Override
+	public int enumerate(PackedBoard b, int limit, Consumer<PackedBoard> action) {
+		return run(b, limit, null, action);
+	}
+
+
+	private int run(PackedBoard b, int limit, PackedBoard solution, Consumer<PackedBoard> action) {
+		this.limit = limit;
+		this.solution = solution;
+		this.action = action;
+		found = 0;
+		trailSize = 0;
+		for (int i = 0; i < 9; i++) {
+			rows[i] = 0;
+			columns[i] = 0;
+			segments[i] = 0;
+		}
+		for (int i = 0; i < 81; i++) {
+			int v = b.get(i);
+			cells[i] = 0;
+			if (v == 0)
+				continue;
+			if (v < 0 || v > 9)
+				return 0;
+			int bit = 1 << (v - 1);
+			if (((rows[ROW[i]] | columns[COLUMN[i]] | segments[SEGMENT[i]]) & bit) != 0)
+				return 0;
+			place(i, bit);
+		}
+		trailSize = 0;
+		if (limit > 0)
+			search();
+		this.solution = null;
+		this.action = null;
+		return found;
+	}
+
+
+	/* Returns true when the search can stop (enough solutions found). */
+	private boolean search() {
+		int mark = trailSize;
+
+		int best = propagate();
+		if (best == -2) {
+			undo(mark);
+			return false;
+		}
+		if (best == -1) {
+			if (++found == 1 && solution != null)
+				write(solution);
+			if (action != null) {
+				write(current);
+				action.accept(current);
+			}
+			undo(mark);
+			return found >= limit;
+		}
+		int candidates = candidates(best);
+		while (candidates != 0) {
+			int bit = candidates & -candidates;
+			candidates ^= bit;
+			int branch = trailSize;
+			assign(best, bit);
+			if (search()) {
+				undo(mark);
+				return true;
+			}
+			undo(branch);
+		}
+		undo(mark);
+		return false;
+	}
+
+
+	/*
+	 * Assigns singles until none is left. Returns the empty cell with fewest
+	 * candidates, -1 when the board is full or -2 on a contradiction.
+	 */
+	private int propagate() {
+		boolean progress = true;
+		int best = -1;
+
+		while (progress) {
+			progress = false;
+			best = -1;
+			int bestCount = 10;
+			for (int i = 0; i < 81; i++) {
+				if (cells[i] != 0)
+					continue;
+				int c = candidates(i);
+				if (c == 0)
+					return -2;
+				if ((c & (c - 1)) == 0) {
+					assign(i, c);
+					progress = true;
+				}
+				else if (!progress) {
+					int n = Integer.bitCount(c);
+					if (n < bestCount) {
+						bestCount = n;
+						best = i;
+					}
+				}
+			}
+			if (progress)
+				continue;
+			for (int h = 0; h < 27; h++) {
+				int once = 0, twice = 0, placed = 0;
+				int[] house = HOUSES[h];
+				for (int k = 0; k < 9; k++) {
+					int i = house[k];
+					int c = cells[i] != 0 ? cells[i] : candidates(i);
+					placed |= cells[i];
+					twice |= once & c;
+					once |= c;
+				}
+				if (once != ALL)
+					return -2;
+				int hidden = once & ~twice & ~placed;
+				for (int k = 0; k < 9 && hidden != 0; k++) {
+					int i = house[k];
+					if (cells[i] == 0 && (candidates(i) & hidden) != 0) {
+						int bit = candidates(i) & hidden;
+						if ((bit & (bit - 1)) != 0)
+							return -2;
+						hidden &= ~bit;
+						assign(i, bit);
+						progress = true;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+
+	private void write(PackedBoard b) {
+		for (int i = 0; i < 81; i++)
+			b.set(i, Integer.numberOfTrailingZeros(cells[i]) + 1);
+	}
+
+
+	private int candidates(int i) {
+		return ~(rows[ROW[i]] | columns[COLUMN[i]] | segments[SEGMENT[i]]) & ALL;
+	}
+
+
+	private void assign(int i, int bit) {
+		place(i, bit);
+		trail[trailSize++] = i;
+	}
+
+
+	private void place(int i, int bit) {
+		cells[i] = bit;
+		rows[ROW[i]] |= bit;
+		columns[COLUMN[i]] |= bit;
+		segments[SEGMENT[i]] |= bit;
+	}
+
+
+	private void undo(int mark) {
+		while (trailSize > mark) {
+			int i = trail[--trailSize];
+			int bit = cells[i];
+			cells[i] = 0;
+			rows[ROW[i]] &= ~bit;
+			columns[COLUMN[i]] &= ~bit;
+			segments[SEGMENT[i]] &= ~bit;
+		}
+	}
+}
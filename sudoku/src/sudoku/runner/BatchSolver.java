@@ -0,0 +1,253 @@
+package sudoku.runner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Solves every puzzle of a file (in any format read by PuzzleImporter) and
+ * writes one solution per line, as 81 characters. Puzzles without a solution
+ * (or, with -unique, without exactly one) are failures: their line is written
+ * unchanged and reported at the end.
+ *
+ * Solutions are written in input order, unless -unordered is given: lines are
+ * then written as each chunk finishes and start with the input line number.
+ * In order, output line N answers input line N: a malformed line is written
+ * as a comment with the reason ("# ..."), and empty and comment lines are
+ * written empty.
+ *
+ * Uso: BatchSolver <entrada> <saida> [-threads=N] [-solver=BACKTRACKING|DANCING_LINKS] [-unordered] [-unique]
+ */
+final class BatchSolver {
+	private static final int REPORTED_FAILURES = 10;
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+	private final FileChannel out;
+	private final SolverBackend backend;
+	private final boolean ordered, unique;
+	private final int window;
+	private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(this::newWorker);
+	private final List<Worker> allWorkers = new ArrayList<>();
+	private final Map<Long, ByteBuffer> pending = new HashMap<>();
+	private final List<Long> failures = new ArrayList<>();
+	private long nextChunk, failed;
+
+
+	/* Solver state of one pool thread. */
+	private final class Worker {
+		final SudokuSolver solver = backend.create();
+		final PackedBoard solution = new PackedBoard();
+		ByteBuffer output = ByteBuffer.allocate(1 << 16);
+		long[] latencies = new long[1024];
+		int solved;
+	}
+
+
+	private BatchSolver(FileChannel out, SolverBackend backend, int threads, boolean ordered, boolean unique) {
+		this.out = out;
+		this.backend = backend;
+		this.ordered = ordered;
+		this.unique = unique;
+		window = threads * 4;
+	}
+
+
+	private Worker newWorker() {
+		Worker w = new Worker();
+		synchronized (allWorkers) {
+			allWorkers.add(w);
+		}
+		return w;
+	}
+
+
+	private void solve(long line, PackedBoard puzzle) {
+		Worker w = workers.get();
+		long start = System.nanoTime();
+		boolean ok = unique ? w.solver.enumerate(puzzle, 2, w.solution::copyFrom) == 1 : w.solver.solve(puzzle, w.solution);
+		long time = System.nanoTime() - start;
+
+		if (w.solved == w.latencies.length)
+			w.latencies = Arrays.copyOf(w.latencies, w.solved * 2);
+		w.latencies[w.solved++] = time;
+		if (!ok)
+			fail(line);
+		reserve(w, 32 + BoardCodec.Format.LINE.length());
+		if (!ordered)
+			w.output.put(Long.toString(line).getBytes()).put((byte) ' ');
+		BoardCodec.encode(ok ? w.solution : puzzle, BoardCodec.Format.LINE, w.output);
+	}
+
+
+	/* Keeps the output aligned with the input: the line says why it was not solved. */
+	private void malformed(long line, String reason) {
+		Worker w = workers.get();
+		byte[] text = ("# " + reason).getBytes();
+
+		reserve(w, 32 + text.length + LINE_SEPARATOR.length);
+		if (!ordered)
+			w.output.put(Long.toString(line).getBytes()).put((byte) ' ');
+		w.output.put(text).put(LINE_SEPARATOR);
+	}
+
+
+	private void skipped() {
+		Worker w = workers.get();
+
+		if (ordered) {
+			reserve(w, LINE_SEPARATOR.length);
+			w.output.put(LINE_SEPARATOR);
+		}
+	}
+
+
+	private static void reserve(Worker w, int bytes) {
+		if (w.output.remaining() < bytes) {
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(w.output.capacity() * 2, w.output.position() + bytes));
+			w.output.flip();
+			w.output = bigger.put(w.output);
+		}
+	}
+
+
+	private synchronized void fail(long line) {
+		failed++;
+		if (failures.size() < REPORTED_FAILURES)
+			failures.add(line);
+	}
+
+
+	/* Writes the output of a finished chunk, keeping the chunks in order if needed. */
+	private void chunkDone(long chunk) {
+		Worker w = workers.get();
+
+		w.output.flip();
+		if (!ordered) {
+			synchronized (this) {
+				write(w.output);
+			}
+			w.output.clear();
+			return;
+		}
+		ByteBuffer done = w.output;
+		w.output = ByteBuffer.allocate(done.capacity());
+		synchronized (this) {
+			/* Bounds the chunks waiting for a slower one; the slower one never waits here. */
+			while (chunk - nextChunk > window)
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			pending.put(chunk, done);
+			ByteBuffer next;
+			while ((next = pending.remove(nextChunk)) != null) {
+				write(next);
+				nextChunk++;
+			}
+			notifyAll();
+		}
+	}
+
+
+	private void write(ByteBuffer data) {
+		try {
+			BoardCodec.write(out, data);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Não foi possível escrever as soluções!");
+		}
+	}
+
+
+	private void report(long puzzles, long malformed, long nanos) {
+		long[] all = new long[0];
+		int n = 0;
+
+		for (Worker w : allWorkers) {
+			all = Arrays.copyOf(all, n + w.solved);
+			System.arraycopy(w.latencies, 0, all, n, w.solved);
+			n += w.solved;
+		}
+		Arrays.sort(all);
+		double seconds = nanos / 1e9;
+		System.out.printf("%d puzzles resolvidos em %.2f s (%.0f puzzles/s), %d falhas, %d linhas invalidas%n",
+				puzzles, seconds, puzzles / seconds, failed, malformed);
+		if (n > 0)
+			System.out.printf("Latencia (us): p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n", percentile(all, 0.5),
+					percentile(all, 0.9), percentile(all, 0.99), percentile(all, 0.999), all[n - 1] / 1e3);
+		if (failed > 0)
+			System.out.println("Falhas nas linhas " + failures + (failed > failures.size() ? " ..." : ""));
+	}
+
+
+	private static double percentile(long[] sorted, double p) {
+		return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e3;
+	}
+
+
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		SolverBackend backend = SolverBackend.BACKTRACKING;
+		boolean ordered = true, unique = false;
+		List<String> files = new ArrayList<>();
+
+		for (String arg : args) {
+			if (arg.startsWith("-threads="))
+				threads = Integer.parseInt(arg.substring(9));
+			else if (arg.startsWith("-solver="))
+				backend = SolverBackend.valueOf(arg.substring(8));
+			else if (arg.equals("-unordered"))
+				ordered = false;
+			else if (arg.equals("-unique"))
+				unique = true;
+			else
+				files.add(arg);
+		}
+		if (files.size() != 2) {
+			System.out.println("Uso: BatchSolver <entrada> <saida> [-threads=N] [-solver=BACKTRACKING|DANCING_LINKS] [-unordered] [-unique]");
+			return;
+		}
+		try (FileChannel out = FileChannel.open(Paths.get(files.get(1)), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			BatchSolver batch = new BatchSolver(out, backend, threads, ordered, unique);
+			PuzzleImporter importer = new PuzzleImporter(threads, 1 << 20);
+			long start = System.nanoTime();
+			long n = importer.run(files.get(0), new PuzzleImporter.Sink() {
+				@Override
+				public void puzzle(long chunk, long line, PackedBoard puzzle) {
+					batch.solve(line, puzzle);
+				}
+
+				@Override
+				public void malformed(long chunk, long line, String reason) {
+					System.out.println("Linha " + line + ": " + reason);
+					batch.malformed(line, reason);
+				}
+
+				@Override
+				public void skipped(long chunk, long line) {
+					batch.skipped();
+				}
+
+				@Override
+				public void chunkDone(long chunk) {
+					batch.chunkDone(chunk);
+				}
+			});
+			batch.report(n, importer.malformed(), System.nanoTime() - start);
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("O ficheiro " + files.get(1) + " não foi escrito!");
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package sudoku.runner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary save format (.sudbin), version 1, big endian:
+ *
+ * 0   magic "SUDB"
+ * 4   version, then 3 reserved bytes
+ * 8   initial board, packed (41 bytes)
+ * 49  game board, packed (41 bytes)
+ * 90  number of moves n, then how many of them can be undone
+ * 98  n packed History moves, 2 bytes each
+ * end CRC32 of everything before it
+ *
+ * Files are read through a memory mapping, without intermediate Strings.
+ */
+final class BinaryGame {
+	static final String EXTENSION = ".sudbin";
+	private static final int MAGIC = 0x53554442;
+	private static final int VERSION = 1;
+	private static final int INITIAL = 8, GAME = INITIAL + PackedBoard.PACKED_SIZE;
+	private static final int MOVES = GAME + PackedBoard.PACKED_SIZE + 8;
+
+
+	static ByteBuffer encode(PackedBoard initial, PackedBoard game, History history) {
+		int n = history.total();
+		ByteBuffer b = ByteBuffer.allocate(MOVES + 2 * n + 4);
+
+		b.putInt(0, MAGIC);
+		b.put(4, (byte) VERSION);
+		initial.pack(b, INITIAL);
+		game.pack(b, GAME);
+		b.putInt(GAME + PackedBoard.PACKED_SIZE, n);
+		b.putInt(GAME + PackedBoard.PACKED_SIZE + 4, history.size());
+		for (int i = 0; i < n; i++)
+			b.putShort(MOVES + 2 * i, (short) history.get(i));
+		b.putInt(MOVES + 2 * n, checksum(b, MOVES + 2 * n));
+		return b;
+	}
+
+
+	static SudokuBoard load(String file) {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (b.limit() < MOVES + 4 || b.getInt(0) != MAGIC)
+				throw new IllegalArgumentException("O ficheiro " + file + " não é um jogo guardado!");
+			if (b.get(4) != VERSION)
+				throw new IllegalArgumentException("Versão do ficheiro " + file + " não suportada!");
+			int n = b.getInt(GAME + PackedBoard.PACKED_SIZE), position = b.getInt(GAME + PackedBoard.PACKED_SIZE + 4);
+			if (n < 0 || position < 0 || position > n || b.limit() != MOVES + 2 * n + 4
+					|| b.getInt(MOVES + 2 * n) != checksum(b, MOVES + 2 * n))
+				throw new IllegalArgumentException("O ficheiro " + file + " está corrompido!");
+
+			PackedBoard initial = new PackedBoard(), game = new PackedBoard();
+			History history = new History();
+			initial.unpack(b, INITIAL);
+			game.unpack(b, GAME);
+			for (int i = 0; i < n; i++)
+				history.push(b.getShort(MOVES + 2 * i) & 0xFFFF);
+			for (int i = position; i < n; i++)
+				history.undo();
+			return new SudokuBoard(initial, game, history);
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("O ficheiro " + file + " não foi encontrado!");
+		}
+	}
+
+
+	static void write(String file, ByteBuffer data) {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer b = data.duplicate();
+			b.clear();
+			while (b.hasRemaining())
+				channel.write(b);
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("O ficheiro *" + EXTENSION + " não foi escrito!");
+		}
+	}
+
+
+	/* Converts a text save (.sudgame and its .sudsteps) into the binary format. */
+	static void convert(String textFile, String binaryFile) {
+		SudokuBoard board = Sudoku.readBoard(textFile);
+		write(binaryFile, board.toBinary());
+	}
+
+
+	private static int checksum(ByteBuffer b, int length) {
+		CRC32 crc = new CRC32();
+		ByteBuffer slice = b.duplicate();
+
+		slice.position(0).limit(length);
+		crc.update(slice);
+		return (int) crc.getValue();
+	}
+
+
+	public static void main(String[] args) {
+		for (String file : args) {
+			Path path = Paths.get(file);
+			String name = path.getFileName().toString();
+			int dot = name.lastIndexOf('.');
+			String target = path.resolveSibling((dot < 0 ? name : name.substring(0, dot)) + EXTENSION).toString();
+			convert(file, target);
+			System.out.println(file + " -> " + target);
+		}
+	}
+}
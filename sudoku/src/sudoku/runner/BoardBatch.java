@@ -0,0 +1,168 @@
+package sudoku.runner;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Many boards stored struct-of-arrays, for validating them together: cell i
+ * of board k is at cells[i * capacity + k], so the same cell of consecutive
+ * boards is contiguous and can be checked one vector of boards at a time.
+ *
+ * validate() gives, for each board, the same answer as SudokuAux.checkBoard.
+ * It uses jdk.incubator.vector when the module is present (run with
+ * --add-modules jdk.incubator.vector) and scalar code otherwise.
+ */
+final class BoardBatch {
+	/* The 9 cells of each row, column and segment. */
+	static final int[][] HOUSES = new int[27][9];
+	static final boolean VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+			&& VectorBatchValidator.usable();
+
+	static {
+		for (int i = 0; i < 9; i++)
+			for (int j = 0; j < 9; j++) {
+				HOUSES[i][j] = i * 9 + j;
+				HOUSES[9 + i][j] = j * 9 + i;
+				HOUSES[18 + i][j] = ((i / 3) * 3 + j / 3) * 9 + (i % 3) * 3 + j % 3;
+			}
+	}
+
+	private static volatile long consumed;
+
+	private final int capacity;
+	private final short[] cells;
+	private int size;
+
+
+	/* The capacity is rounded up to a multiple of 64. */
+	BoardBatch(int capacity) {
+		this.capacity = (capacity + 63) & ~63;
+		cells = new short[PackedBoard.SIZE * this.capacity];
+	}
+
+
+	int capacity() {
+		return capacity;
+	}
+
+
+	int size() {
+		return size;
+	}
+
+
+	short[] cells() {
+		return cells;
+	}
+
+
+	/* Empties the batch; the remaining boards are cleared so they check as valid. */
+	void clear() {
+		Arrays.fill(cells, (short) 0);
+		size = 0;
+	}
+
+
+	/* Adds b, returning its index in the batch. */
+	int add(PackedBoard b) {
+		if (size == capacity)
+			throw new IllegalStateException("O lote de tabuleiros está cheio!");
+		for (int i = 0; i < PackedBoard.SIZE; i++)
+			cells[i * capacity + size] = (short) b.get(i);
+		return size++;
+	}
+
+
+	/* Bitmap with bit k set when board k passes checkBoard. */
+	long[] validate() {
+		long[] valid = new long[capacity / 64];
+
+		if (VECTOR)
+			VectorBatchValidator.validate(this, valid);
+		else
+			validateScalar(valid);
+		return valid;
+	}
+
+
+	void validateScalar(long[] valid) {
+		Arrays.fill(valid, 0);
+		for (int k = 0; k < size; k++) {
+			int bad = 0;
+			for (int h = 0; h < 27 && bad == 0; h++) {
+				int seen = 0;
+				for (int i = 0; i < 9; i++) {
+					int v = cells[HOUSES[h][i] * capacity + k];
+					int bit = 1 << (v & 15);
+					bad |= (v < 0 || v > 9 ? 1 : 0) | (seen & bit & ~1);
+					seen |= bit;
+				}
+			}
+			if (bad == 0)
+				valid[k >>> 6] |= 1L << k;
+		}
+	}
+
+
+	/* Compares both paths with checkBoard and times them: BoardBatch [boards] [rounds] */
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 16;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		GridGenerator generator = new GridGenerator(new Random(1));
+		Random random = new Random(2);
+		PackedBoard[] boards = new PackedBoard[n];
+		BoardBatch batch = new BoardBatch(n);
+
+		for (int k = 0; k < n; k++) {
+			boards[k] = generator.generate();
+			for (int i = 0; i < PackedBoard.SIZE; i++)
+				if (random.nextInt(3) == 0)
+					boards[k].set(i, 0);
+			if (random.nextBoolean())
+				boards[k].set(random.nextInt(PackedBoard.SIZE), random.nextInt(10));
+			batch.add(boards[k]);
+		}
+
+		long[] scalar = new long[batch.capacity / 64], vector = new long[batch.capacity / 64];
+		long[] expected = new long[batch.capacity / 64];
+		for (int k = 0; k < n; k++)
+			if (SudokuAux.checkBoard(boards[k]))
+				expected[k >>> 6] |= 1L << k;
+		batch.validateScalar(scalar);
+		System.out.println("Escalar igual a checkBoard: " + Arrays.equals(scalar, expected));
+		if (VECTOR) {
+			VectorBatchValidator.validate(batch, vector);
+			System.out.println("Vetorial igual a checkBoard: " + Arrays.equals(vector, expected));
+		}
+		else
+			System.out.println("Sem suporte vetorial (use --add-modules jdk.incubator.vector)");
+
+		for (int pass = 0; pass < 2; pass++) {
+			boolean last = pass == 1;
+			long start = System.nanoTime();
+			int valid = 0;
+			for (int r = 0; r < rounds; r++)
+				for (PackedBoard b : boards)
+					valid += SudokuAux.checkBoard(b) ? 1 : 0;
+			report(last, "checkBoard", n, rounds, System.nanoTime() - start, valid);
+			start = System.nanoTime();
+			for (int r = 0; r < rounds; r++)
+				batch.validateScalar(scalar);
+			report(last, "Escalar", n, rounds, System.nanoTime() - start, scalar[0]);
+			if (VECTOR) {
+				start = System.nanoTime();
+				for (int r = 0; r < rounds; r++)
+					VectorBatchValidator.validate(batch, vector);
+				report(last, "Vetorial", n, rounds, System.nanoTime() - start, vector[0]);
+			}
+		}
+	}
+
+
+	/* The first pass only warms up; results go to consumed so they are not optimized away. */
+	private static void report(boolean print, String name, int n, int rounds, long nanos, long result) {
+		consumed += result;
+		if (print)
+			System.out.printf("%-10s %6.1f M tabuleiros/s%n", name, (double) n * rounds / nanos * 1e3);
+	}
+}
@@ -0,0 +1,83 @@
+package sudoku.runner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Reads and writes boards as text straight from and to byte buffers, in
+ * either the spaced layout of .sud and .sudgame files (9 lines of 9 numbers
+ * separated by spaces) or the single line of 81 characters used by puzzle
+ * collections. Nothing is allocated per board.
+ */
+final class BoardCodec {
+	enum Format {
+		SPACED,
+		LINE;
+
+
+		/* Bytes written by encode for one board. */
+		int length() {
+			return this == SPACED ? 9 * (17 + LINE_SEPARATOR.length) : 81 + LINE_SEPARATOR.length;
+		}
+	}
+
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+
+	private BoardCodec() {
+	}
+
+
+	/* Writes b at the buffer position, followed by a line separator. */
+	static void encode(PackedBoard b, Format format, ByteBuffer out) {
+		for (int y = 0; y < 9; y++) {
+			for (int x = 0; x < 9; x++) {
+				out.put((byte) ('0' + b.get(x, y)));
+				if (format == Format.SPACED && x < 8)
+					out.put((byte) ' ');
+			}
+			if (format == Format.SPACED || y == 8)
+				out.put(LINE_SEPARATOR);
+		}
+	}
+
+
+	/*
+	 * Reads the next 81 cells from the buffer position, in either format.
+	 * Digits are cells ('0' or '.' for an empty one); spaces and line breaks
+	 * are skipped. The position is left after the last cell.
+	 */
+	static void decode(ByteBuffer in, PackedBoard out) {
+		int i = 0;
+
+		while (i < PackedBoard.SIZE) {
+			if (!in.hasRemaining())
+				throw new IllegalArgumentException("Tabuleiro incompleto!");
+			int c = in.get();
+			if (c >= '0' && c <= '9')
+				out.set(i++, c - '0');
+			else if (c == '.')
+				out.set(i++, 0);
+			else if (c != ' ' && c != '\t' && c != '\r' && c != '\n')
+				throw new IllegalArgumentException("Caracter invalido no tabuleiro: " + (char) c);
+		}
+	}
+
+
+	static void write(WritableByteChannel channel, ByteBuffer data) throws IOException {
+		while (data.hasRemaining())
+			channel.write(data);
+	}
+
+
+	/* Fills the buffer from the channel (until it is full or the channel ends) and flips it. */
+	static ByteBuffer read(ReadableByteChannel channel, ByteBuffer in) throws IOException {
+		in.clear();
+		while (in.hasRemaining() && channel.read(in) >= 0)
+			continue;
+		in.flip();
+		return in;
+	}
+}
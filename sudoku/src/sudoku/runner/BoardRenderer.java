@@ -0,0 +1,228 @@
+package sudoku.runner;
+
+import sudoku.framework.*;
+
+/**
+ * Composes the board image from cached layers, bottom to top: the clue
+ * digits (drawn when a game is loaded), the player digits (redrawn by row),
+ * the segment lines (drawn once for all boards) and the marks (cells just
+ * played, markers of invalid rows, columns and segments, finished board).
+ * Only layers whose content changed are redrawn, and the frame is composed
+ * again only inside the rectangles where they changed. The clue layer has an
+ * opaque black background, so the frame is opaque like the board always was.
+ */
+final class BoardRenderer {
+	private static final int SIZE = 470, ROW = 50, TOP = 10, TEXT = 37;
+	private static final int BACKGROUND = 0xFF000000;
+	private static final ColorImage GRID = new ColorImage(SIZE, SIZE);
+
+	static {
+		SudokuAux.makeSegments(GRID, Params.PRIMARY_COLOR);
+	}
+
+	private final ColorImage clues = new ColorImage(SIZE, SIZE), player = new ColorImage(SIZE, SIZE);
+	private final ColorImage marks = new ColorImage(SIZE, SIZE);
+	private final PackedBoard shown = new PackedBoard();
+	private final boolean[] given = new boolean[PackedBoard.SIZE];
+	private final int[] cellX = new int[PackedBoard.SIZE];
+	private final boolean[] highlights = new boolean[PackedBoard.SIZE], shownHighlights = new boolean[PackedBoard.SIZE];
+	private final int[] dirty = new int[4 * 64];
+	private int dirtyCount;
+	private int rows, columns, segments;
+	private boolean finished;
+	private ColorImage target;
+
+
+	/* Starts a game on b; the cells filled in initial are clues. The next frame is drawn in full. */
+	void load(PackedBoard initial, PackedBoard b) {
+		shown.copyFrom(b);
+		for (int i = 0; i < PackedBoard.SIZE; i++)
+			given[i] = initial.get(i) != 0;
+		clues.FillRect(0, 0, SIZE, SIZE, BACKGROUND);
+		for (int y = 0; y < 9; y++) {
+			place(y);
+			drawRow(clues, y, true);
+			drawRow(player, y, false);
+		}
+		marks.FillRect(0, 0, SIZE, SIZE, 0);
+		rows = columns = segments = 0;
+		finished = false;
+		clearHighlights();
+		java.util.Arrays.fill(shownHighlights, false);
+		target = null;
+	}
+
+
+	/* Cell (x, y) is shown with the play color in the next frame. */
+	void highlight(int x, int y) {
+		highlights[y * 9 + x] = true;
+	}
+
+
+	void clearHighlights() {
+		java.util.Arrays.fill(highlights, false);
+	}
+
+
+	/* Brings img up to date with b, which must be the board given to load. */
+	void render(ColorImage img, PackedBoard b, SudokuConstraints constraints, boolean isFinished) {
+		boolean full = img != target;
+
+		dirtyCount = 0;
+		for (int y = 0; y < 9; y++) {
+			boolean changed = false, clueChanged = false;
+			for (int x = 0; x < 9; x++)
+				if (b.get(x, y) != shown.get(x, y)) {
+					changed = true;
+					clueChanged |= given[y * 9 + x];
+					shown.set(x, y, b.get(x, y));
+				}
+			if (changed) {
+				clueChanged |= place(y);
+				drawRow(player, y, false);
+				if (clueChanged)
+					drawRow(clues, y, true);
+				addDirty(0, TOP + ROW * y, SIZE, ROW);
+			}
+		}
+		full |= updateMarks(b, constraints, isFinished);
+
+		if (full || dirtyCount < 0)
+			compose(img, 0, 0, SIZE, SIZE);
+		else
+			for (int i = 0; i < dirtyCount; i += 4)
+				compose(img, dirty[i], dirty[i + 1], dirty[i + 2], dirty[i + 3]);
+		target = img;
+	}
+
+
+	/* Redraws the marks layer if anything on it changed; true if the whole layer was redrawn. */
+	private boolean updateMarks(PackedBoard b, SudokuConstraints constraints, boolean isFinished) {
+		int newRows = 0, newColumns = 0, newSegments = 0;
+		boolean any = false, whole = isFinished != finished;
+
+		for (int i = 0; i < 9; i++) {
+			newRows |= constraints.isValidRow(i) ? 0 : 1 << i;
+			newColumns |= constraints.isValidColumn(i) ? 0 : 1 << i;
+			newSegments |= constraints.isValidSegment(i) ? 0 : 1 << i;
+		}
+		for (int i = 0; i < PackedBoard.SIZE; i++)
+			any |= highlights[i] || shownHighlights[i];
+		if (!whole && !any && newRows == rows && newColumns == columns && newSegments == segments)
+			return false;
+
+		/* Old marks are erased where they were, then everything still marked is drawn again. */
+		if (whole)
+			marks.FillRect(0, 0, SIZE, SIZE, 0);
+		else {
+			cells(shownHighlights, true);
+			lines(rows & ~newRows, columns & ~newColumns, segments & ~newSegments, true);
+		}
+		for (int i = 0; i < PackedBoard.SIZE; i++)
+			if (highlights[i])
+				SudokuAux.changePosition(marks, i % 9, i / 9, b.get(i));
+		for (int i = 0; i < 9; i++) {
+			if ((newRows & 1 << i) != 0)
+				SudokuAux.atentionRow(marks, i + 1);
+			if ((newColumns & 1 << i) != 0)
+				SudokuAux.atentionColumn(marks, i + 1);
+		}
+		for (int s = 0; s < 9; s++)
+			if ((newSegments & 1 << s) != 0)
+				SudokuAux.atentionSegments(marks, (s % 3) + 1, (s / 3) + 1);
+		if (isFinished)
+			SudokuAux.makeSegments(marks, Params.FINISHED_COLOR);
+		cells(highlights, false);
+		lines(newRows & ~rows, newColumns & ~columns, newSegments & ~segments, false);
+
+		System.arraycopy(highlights, 0, shownHighlights, 0, highlights.length);
+		clearHighlights();
+		rows = newRows;
+		columns = newColumns;
+		segments = newSegments;
+		finished = isFinished;
+		return whole;
+	}
+
+
+	/* The rectangles of the given cells are dirty, and erased from the marks first if clear. */
+	private void cells(boolean[] cells, boolean clear) {
+		for (int i = 0; i < PackedBoard.SIZE; i++)
+			if (cells[i])
+				markDirty(15 + ROW * (i % 9), TOP + ROW * (i / 9), 45, ROW, clear);
+	}
+
+
+	/* Same for the lines of the given row, column and segment markers. */
+	private void lines(int rowMask, int columnMask, int segmentMask, boolean clear) {
+		for (int i = 0; i < 9; i++) {
+			if ((rowMask & 1 << i) != 0) {
+				markDirty(0, TOP + ROW * i - 2, SIZE, 3, clear);
+				markDirty(0, TOP + ROW * (i + 1) - 2, SIZE, 3, clear);
+			}
+			if ((columnMask & 1 << i) != 0) {
+				markDirty(TOP + ROW * i - 2, 0, 3, SIZE, clear);
+				markDirty(TOP + ROW * (i + 1) - 2, 0, 3, SIZE, clear);
+			}
+			if ((segmentMask & 1 << i) != 0) {
+				int sx = TOP + 150 * (i % 3) - 2, sy = TOP + 150 * (i / 3) - 2;
+				markDirty(sx, sy, 153, 3, clear);
+				markDirty(sx, sy + 150, 153, 3, clear);
+				markDirty(sx, sy, 3, 153, clear);
+				markDirty(sx + 150, sy, 3, 153, clear);
+			}
+		}
+	}
+
+
+	private void markDirty(int x, int y, int width, int height, boolean clear) {
+		if (clear)
+			marks.FillRect(x, y, width, height, 0);
+		addDirty(x, y, width, height);
+	}
+
+
+	/* Where each cell of row y starts, as if the row were drawn as one text; true if a clue moved. */
+	private boolean place(int y) {
+		int x = 20, space = ImageUtil.textWidth("   ", TEXT);
+		boolean moved = false;
+
+		for (int i = y * 9; i < y * 9 + 9; i++) {
+			moved |= given[i] && cellX[i] != x;
+			cellX[i] = x;
+			x += ImageUtil.textWidth(SudokuAux.DIGITS[shown.get(i)], TEXT) + space;
+		}
+		return moved;
+	}
+
+
+	/* Row y of the clue layer (clue cells) or of the player layer (the other cells). */
+	private void drawRow(ColorImage layer, int y, boolean clue) {
+		layer.FillRect(0, TOP + ROW * y, SIZE, ROW, clue ? BACKGROUND : 0);
+		for (int i = y * 9; i < y * 9 + 9; i++)
+			if (given[i] == clue)
+				layer.drawText(cellX[i], TOP + ROW * y, SudokuAux.DIGITS[shown.get(i)], TEXT, Params.PRIMARY_COLOR);
+	}
+
+
+	/* The clue layer is the bottom one and opaque, so it is copied rather than blended. */
+	private void compose(ColorImage img, int x, int y, int width, int height) {
+		img.Blit(clues, x, y, x, y, width, height);
+		img.Composite(player, x, y, x, y, width, height);
+		img.Composite(GRID, x, y, x, y, width, height);
+		img.Composite(marks, x, y, x, y, width, height);
+	}
+
+
+	/* A full redraw is done instead when there are too many rectangles. */
+	private void addDirty(int x, int y, int width, int height) {
+		if (dirtyCount < 0 || dirtyCount == dirty.length) {
+			dirtyCount = -1;
+			return;
+		}
+		dirty[dirtyCount++] = x;
+		dirty[dirtyCount++] = y;
+		dirty[dirtyCount++] = width;
+		dirty[dirtyCount++] = height;
+	}
+}
@@ -0,0 +1,210 @@
+package sudoku.runner;
+
+import java.util.function.Consumer;
+
+/**
+ * Algorithm X over dancing links. The board is an exact cover problem with
+ * 324 columns (cell, row-number, column-number and segment-number constraints)
+ * and 729 rows (a number placed in a cell), each row having 4 nodes.
+ * Nodes live in preallocated int arrays (node 0 is the root, 1..324 the
+ * column headers), so nothing is allocated after construction. Clues are
+ * covered before the search and uncovered afterwards, leaving the matrix
+ * ready for the next board.
+ */
+final class DancingLinksSolver implements SudokuSolver {
+	private static final int COLUMNS = 324;
+	private static final int ROWS = 729;
+	private static final int FIRST = COLUMNS + 1;
+	private static final int NODES = FIRST + ROWS * 4;
+
+	private final int[] left = new int[NODES], right = new int[NODES];
+	private final int[] up = new int[NODES], down = new int[NODES];
+	private final int[] column = new int[NODES];
+	private final int[] size = new int[FIRST];
+	private final int[] stack = new int[81];
+	private final int[] clues = new int[81];
+	private final PackedBoard current = new PackedBoard();
+	private int found, limit;
+	private PackedBoard solution;
+	private Consumer<PackedBoard> action;
+
+
+	DancingLinksSolver() {
+		for (int c = 0; c < FIRST; c++) {
+			left[c] = c == 0 ? COLUMNS : c - 1;
+			right[c] = c == COLUMNS ? 0 : c + 1;
+			up[c] = c;
+			down[c] = c;
+		}
+		for (int r = 0; r < ROWS; r++) {
+			int cell = r / 9, v = r % 9, x = cell % 9, y = cell / 9;
+			int[] columns = {
+				cell,
+				81 + y * 9 + v,
+				162 + x * 9 + v,
+				243 + SudokuConstraints.segmentOf(x, y) * 9 + v
+			};
+			for (int j = 0; j < 4; j++) {
+				int n = FIRST + r * 4 + j, c = columns[j] + 1;
+				column[n] = c;
+				up[n] = up[c];
+				down[n] = c;
+				down[up[c]] = n;
+				up[c] = n;
+				size[c]++;
+				left[n] = FIRST + r * 4 + (j + 3) % 4;
+				right[n] = FIRST + r * 4 + (j + 1) % 4;
+			}
+		}
+	}
+
+
+	@Override
+	public boolean solve(PackedBoard b, PackedBoard solution) {
+		return run(b, 1, solution, null) == 1;
+	}
+
+
+	@Override
+	public int countSolutions(PackedBoard b, int limit) {
+		return run(b, limit, null, null);
+	}
+
+
+	@Override
+	public int enumerate(PackedBoard b, int limit, Consumer<PackedBoard> action) {
+		return run(b, limit, null, action);
+	}
+
+
+	private int run(PackedBoard b, int limit, PackedBoard solution, Consumer<PackedBoard> action) {
+		int n = 0;
+
+		this.limit = limit;
+		this.solution = solution;
+		this.action = action;
+		found = 0;
+		current.clear();
+		for (int i = 0; i < 81 && n >= 0; i++) {
+			int v = b.get(i);
+			if (v == 0)
+				continue;
+			int r = v < 0 || v > 9 ? -1 : FIRST + (i * 9 + v - 1) * 4;
+			if (r < 0 || !isFree(r)) {
+				uncoverClues(n);
+				n = -1;
+			}
+			else {
+				select(r);
+				clues[n++] = r;
+				current.set(i, v);
+			}
+		}
+		if (n >= 0) {
+			if (limit > 0)
+				search(0);
+			uncoverClues(n);
+		}
+		this.solution = null;
+		this.action = null;
+		return found;
+	}
+
+
+	private boolean isFree(int r) {
+		int n = r;
+
+		do {
+			int c = column[n];
+			if (right[left[c]] != c)
+				return false;
+			n = right[n];
+		} while (n != r);
+		return true;
+	}
+
+
+	private void uncoverClues(int n) {
+		while (n > 0)
+			unselect(clues[--n]);
+	}
+
+
+	/* Returns true when the search can stop (enough solutions found). */
+	private boolean search(int k) {
+		if (right[0] == 0) {
+			found++;
+			for (int i = 0; i < k; i++) {
+				int r = (stack[i] - FIRST) / 4;
+				current.set(r / 9, r % 9 + 1);
+			}
+			if (found == 1 && solution != null)
+				solution.copyFrom(current);
+			if (action != null)
+				action.accept(current);
+			return found >= limit;
+		}
+		int c = right[0];
+		for (int j = right[c]; j != 0; j = right[j])
+			if (size[j] < size[c])
+				c = j;
+		if (size[c] == 0)
+			return false;
+		boolean stop = false;
+		cover(c);
+		for (int r = down[c]; r != c && !stop; r = down[r]) {
+			stack[k] = r;
+			for (int j = right[r]; j != r; j = right[j])
+				cover(column[j]);
+			stop = search(k + 1);
+			for (int j = left[r]; j != r; j = left[j])
+				uncover(column[j]);
+		}
+		uncover(c);
+		return stop;
+	}
+
+
+	private void select(int r) {
+		int n = r;
+
+		do {
+			cover(column[n]);
+			n = right[n];
+		} while (n != r);
+	}
+
+
+	private void unselect(int r) {
+		int n = left[r];
+
+		do {
+			uncover(column[n]);
+			n = left[n];
+		} while (n != left[r]);
+	}
+
+
+	private void cover(int c) {
+		right[left[c]] = right[c];
+		left[right[c]] = left[c];
+		for (int i = down[c]; i != c; i = down[i])
+			for (int j = right[i]; j != i; j = right[j]) {
+				down[up[j]] = down[j];
+				up[down[j]] = up[j];
+				size[column[j]]--;
+			}
+	}
+
+
+	private void uncover(int c) {
+		for (int i = up[c]; i != c; i = up[i])
+			for (int j = left[i]; j != i; j = left[j]) {
+				size[column[j]]++;
+				down[up[j]] = j;
+				up[down[j]] = j;
+			}
+		right[left[c]] = c;
+		left[right[c]] = c;
+	}
+}
@@ -0,0 +1,11 @@
+package sudoku.runner;
+
+/**
+ * When the background writer persists the game: after every move, at most
+ * once every Params.BATCH_MILLIS, or only on flush and close.
+ */
+enum Durability {
+	PER_MOVE,
+	BATCHED,
+	ON_CLOSE
+}
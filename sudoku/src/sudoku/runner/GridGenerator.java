@@ -0,0 +1,87 @@
+package sudoku.runner;
+
+import java.util.Random;
+
+/**
+ * Produces random completed boards. The three diagonal segments are filled
+ * with random permutations (they do not constrain each other), the rest is
+ * completed by the solver, and the result is shuffled with the transformations
+ * that keep a board valid: number relabelling, row swaps inside a band, band
+ * swaps, the same for columns and stacks, and transposition.
+ */
+final class GridGenerator {
+	private static final int[][] ORDERS = {{0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}};
+
+	private final Random random;
+	private final SudokuSolver solver = new BacktrackingSolver();
+	private final PackedBoard seed = new PackedBoard();
+	private final PackedBoard grid = new PackedBoard();
+	private final int[] numbers = new int[10];
+	private final int[] rows = new int[9], columns = new int[9];
+
+
+	GridGenerator() {
+		this(new Random());
+	}
+
+
+	GridGenerator(Random random) {
+		this.random = random;
+	}
+
+
+	PackedBoard generate() {
+		PackedBoard b = new PackedBoard();
+		generate(b);
+		return b;
+	}
+
+
+	void generate(PackedBoard out) {
+		seed.clear();
+		for (int s = 0; s < 9; s += 4) {
+			permutation(numbers);
+			for (int k = 0; k < 9; k++)
+				seed.set((s % 3) * 3 + k % 3, (s / 3) * 3 + k / 3, numbers[k + 1]);
+		}
+		solver.solve(seed, grid);
+
+		permutation(numbers);
+		lines(rows);
+		lines(columns);
+		boolean transpose = random.nextBoolean();
+		for (int y = 0; y < 9; y++)
+			for (int x = 0; x < 9; x++) {
+				int v = numbers[grid.get(columns[x], rows[y])];
+				if (transpose)
+					out.set(y, x, v);
+				else
+					out.set(x, y, v);
+			}
+	}
+
+
+	/* Random relabelling of the numbers: v[0] = 0 and v[1..9] a permutation of 1..9. */
+	private void permutation(int[] v) {
+		for (int i = 0; i < v.length; i++)
+			v[i] = i;
+		for (int i = v.length - 1; i > 1; i--) {
+			int j = 1 + random.nextInt(i);
+			int tmp = v[i];
+			v[i] = v[j];
+			v[j] = tmp;
+		}
+	}
+
+
+	/* Random order of the 9 lines that keeps every line inside a band of 3. */
+	private void lines(int[] v) {
+		int[] bands = ORDERS[random.nextInt(6)];
+
+		for (int band = 0; band < 3; band++) {
+			int[] inner = ORDERS[random.nextInt(6)];
+			for (int k = 0; k < 3; k++)
+				v[band * 3 + k] = bands[band] * 3 + inner[k];
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package sudoku.runner;
+
+/**
+ * Growable undo/redo history. Each move is packed in one int: x, y, the
+ * number that was in the cell and the number placed, 4 bits each.
+ * Moves before position can be undone, moves from position to size redone.
+ */
+final class History {
+	private int[] moves = new int[81];
+	private int position, size;
+
+
+	static int pack(int x, int y, int old, int v) {
+		return x | y << 4 | old << 8 | v << 12;
+	}
+
+
+	static int x(int move) {
+		return move & 0xF;
+	}
+
+
+	static int y(int move) {
+		return (move >> 4) & 0xF;
+	}
+
+
+	static int oldValue(int move) {
+		return (move >> 8) & 0xF;
+	}
+
+
+	static int newValue(int move) {
+		return (move >> 12) & 0xF;
+	}
+
+
+	/* Records a move, discarding the moves that could be redone. */
+	void push(int move) {
+		if (position == moves.length) {
+			int[] grown = new int[moves.length * 2];
+			System.arraycopy(moves, 0, grown, 0, position);
+			moves = grown;
+		}
+		moves[position++] = move;
+		size = position;
+	}
+
+
+	/* Returns the move to undo, or -1 when there is none. */
+	int undo() {
+		return position > 0 ? moves[--position] : -1;
+	}
+
+
+	/* Returns the move to redo, or -1 when there is none. */
+	int redo() {
+		return position < size ? moves[position++] : -1;
+	}
+
+
+	void clear() {
+		position = 0;
+		size = 0;
+	}
+
+
+	/* Number of moves that can be undone. */
+	int size() {
+		return position;
+	}
+
+
+	/* Number of recorded moves, including the ones that can be redone. */
+	int total() {
+		return size;
+	}
+
+
+	int get(int i) {
+		return moves[i];
+	}
+}
@@ -0,0 +1,152 @@
+package sudoku.runner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only log of the moves made since the last snapshot (.sudgame and
+ * .sudsteps). The file starts with a header holding the fingerprint of the
+ * snapshot it applies to, followed by one int per move: the operation in the
+ * upper bits and the packed History move in the lower 16 bits.
+ * A journal whose fingerprint does not match the loaded snapshot is already
+ * part of it and is not replayed.
+ * Moves are buffered in memory by append() and restart(); the background
+ * writer moves them to the file with swap() and write().
+ */
+final class MoveJournal implements AutoCloseable {
+	static final int PUT = 0, UNDO = 1, REDO = 2, RESET = 3;
+	private static final int MAGIC = 0x53554A31;
+
+	private final Path path;
+	private FileChannel channel;
+	private int[] pending = new int[64], writing = new int[64];
+	private int count, records;
+	private boolean restart, writingRestart;
+	private int fingerprint, writingFingerprint;
+	private ByteBuffer buffer = ByteBuffer.allocate(8 + 4 * 64);
+
+
+	MoveJournal(String file) {
+		path = Paths.get(file + ".sudjournal");
+	}
+
+
+	/* Applies the logged moves to board when they were made on top of its current state. */
+	void replay(SudokuBoard board) {
+		if (!Files.exists(path))
+			return;
+		try {
+			ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+			if (in.remaining() < 8 || in.getInt() != MAGIC || in.getInt() != board.fingerprint())
+				return;
+			while (in.remaining() >= 4) {
+				int record = in.getInt();
+				int move = record & 0xFFFF;
+				switch (record >>> 16) {
+				  case PUT:
+					board.putNumber(History.x(move), History.y(move), History.newValue(move));
+					break;
+				  case UNDO:
+					board.undo();
+					break;
+				  case REDO:
+					board.redo();
+					break;
+				  default:
+					board.reset();
+				}
+			}
+		}
+		catch (IOException e) {
+			System.out.println("Não foi possível ler o diário de jogadas!");
+		}
+	}
+
+
+	/* Empties the journal, which from now on applies to the snapshot with the given fingerprint. */
+	synchronized void restart(int fingerprint) {
+		this.fingerprint = fingerprint;
+		restart = true;
+		count = 0;
+		records = 0;
+	}
+
+
+	synchronized void append(int op, int move) {
+		if (count == pending.length) {
+			int[] grown = new int[pending.length * 2];
+			System.arraycopy(pending, 0, grown, 0, count);
+			pending = grown;
+		}
+		pending[count++] = op << 16 | move;
+		records++;
+	}
+
+
+	/* Hands the buffered moves over to write(), returning how many there are. */
+	synchronized int swap() {
+		int n = count;
+		int[] tmp = writing;
+
+		writing = pending;
+		pending = tmp.length >= writing.length ? tmp : new int[writing.length];
+		writingRestart = restart;
+		writingFingerprint = fingerprint;
+		restart = false;
+		count = 0;
+		return n;
+	}
+
+
+	/* Writes the n moves taken by the last swap(), truncating the file first after a restart. */
+	void write(int n) {
+		try {
+			if (writingRestart || channel == null) {
+				if (!writingRestart && n == 0)
+					return;
+				close();
+				channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						writingRestart ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND);
+			}
+			if (buffer.capacity() < 8 + 4 * n)
+				buffer = ByteBuffer.allocate(8 + 4 * writing.length);
+			buffer.clear();
+			if (writingRestart)
+				buffer.putInt(MAGIC).putInt(writingFingerprint);
+			for (int i = 0; i < n; i++)
+				buffer.putInt(writing[i]);
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			writingRestart = false;
+		}
+		catch (IOException e) {
+			System.out.println("Não foi possível guardar as jogadas!");
+		}
+	}
+
+
+	/* Number of moves logged since the last snapshot. */
+	synchronized int records() {
+		return records;
+	}
+
+
+	@Override
+	public void close() {
+		if (channel == null)
+			return;
+		try {
+			channel.close();
+		}
+		catch (IOException e) {
+			System.out.println("Não foi possível fechar o diário de jogadas!");
+		}
+		channel = null;
+	}
+}
@@ -0,0 +1,124 @@
+package sudoku.runner;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A 9x9 board stored as 81 bytes in a single flat array, in row order
+ * (cell i is at x = i % 9, y = i / 9). Empty cells hold 0.
+ */
+final class PackedBoard {
+	static final int SIZE = 81;
+	static final int PACKED_SIZE = 41;
+
+	private final byte[] cells;
+
+
+	PackedBoard() {
+		cells = new byte[SIZE];
+	}
+
+
+	private PackedBoard(byte[] cells) {
+		this.cells = cells;
+	}
+
+
+	int get(int x, int y) {
+		return cells[y * 9 + x];
+	}
+
+
+	int get(int i) {
+		return cells[i];
+	}
+
+
+	void set(int x, int y, int v) {
+		cells[y * 9 + x] = (byte) v;
+	}
+
+
+	void set(int i, int v) {
+		cells[i] = (byte) v;
+	}
+
+
+	PackedBoard copy() {
+		return new PackedBoard(cells.clone());
+	}
+
+
+	void copyFrom(PackedBoard b) {
+		System.arraycopy(b.cells, 0, cells, 0, SIZE);
+	}
+
+
+	void clear() {
+		Arrays.fill(cells, (byte) 0);
+	}
+
+
+	int countZeros() {
+		int n = 0;
+
+		for (int i = 0; i < SIZE; i++)
+			if (cells[i] == 0)
+				n++;
+		return n;
+	}
+
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof PackedBoard && Arrays.equals(cells, ((PackedBoard) o).cells);
+	}
+
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(cells);
+	}
+
+
+	/* Writes the board as 41 bytes, two cells per byte (low nibble first), at offset. */
+	void pack(ByteBuffer b, int offset) {
+		for (int i = 0; i < PACKED_SIZE; i++) {
+			int high = 2 * i + 1 < SIZE ? cells[2 * i + 1] : 0;
+			b.put(offset + i, (byte) (cells[2 * i] | high << 4));
+		}
+	}
+
+
+	/* Reads a board written by pack, without moving the buffer position. */
+	void unpack(ByteBuffer b, int offset) {
+		for (int i = 0; i < SIZE; i++) {
+			int v = b.get(offset + (i >> 1));
+			cells[i] = (byte) ((i & 1) == 0 ? v & 0xF : (v >> 4) & 0xF);
+		}
+	}
+
+
+	/* Conversion to and from the int[][] representation. */
+	static PackedBoard fromMatrix(int[][] b) {
+		if (b.length != 9)
+			throw new IllegalArgumentException("Tabuleiro invalido!");
+		PackedBoard board = new PackedBoard();
+		for (int y = 0; y < 9; y++) {
+			if (b[y].length != 9)
+				throw new IllegalArgumentException("Tabuleiro invalido!");
+			for (int x = 0; x < 9; x++)
+				board.cells[y * 9 + x] = (byte) b[y][x];
+		}
+		return board;
+	}
+
+
+	int[][] toMatrix() {
+		int[][] b = new int[9][9];
+
+		for (int i = 0; i < SIZE; i++)
+			b[i / 9][i % 9] = cells[i];
+		return b;
+	}
+}
@@ -8,4 +8,8 @@ class Params {
 	static final Color ATENTION_SEG_COLOR = new Color(127, 0, 0);
 	static final Color FINISHED_COLOR = new Color(0, 255, 0);
 	static final Color PLAY_COLOR = new Color (50, 50, 50);
+	static final String GAME_NAME = "sudoku";
+	static final int SNAPSHOT_INTERVAL = 64;
+	static final Durability DURABILITY = Durability.PER_MOVE;
+	static final int BATCH_MILLIS = 250;
 }
\ No newline at end of file
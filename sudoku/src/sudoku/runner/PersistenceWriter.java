@@ -0,0 +1,169 @@
+package sudoku.runner;
+
+import sudoku.framework.*;
+
+/**
+ * Background thread that writes the game to disk, so a move only touches
+ * memory. Only the latest frame and snapshot are kept: when moves arrive
+ * faster than the disk, intermediate ones are dropped. Journaled moves are
+ * never dropped. flush() waits for everything submitted so far, and close()
+ * flushes and stops the thread (it also runs when the JVM exits).
+ */
+final class PersistenceWriter implements AutoCloseable {
+	private final MoveJournal journal;
+	private final Thread thread, hook;
+	private Durability durability;
+	private ColorImage frame, writingFrame;
+	private boolean frameDirty;
+	private Runnable snapshot;
+	private long submitted, written, flushTarget;
+	private long lastWrite;
+	private boolean closed;
+
+
+	PersistenceWriter(MoveJournal journal, Durability durability, int width, int height) {
+		this.journal = journal;
+		this.durability = durability;
+		frame = new ColorImage(width, height);
+		writingFrame = new ColorImage(width, height);
+		thread = new Thread(this::run, "sudoku-writer");
+		thread.setDaemon(true);
+		thread.start();
+		hook = new Thread(this::close);
+		Runtime.getRuntime().addShutdownHook(hook);
+	}
+
+
+	synchronized void setDurability(Durability durability) {
+		this.durability = durability;
+		notifyAll();
+	}
+
+
+	synchronized void submitFrame(ColorImage image) {
+		frame.Copy(image);
+		frameDirty = true;
+		submitted++;
+		notifyAll();
+	}
+
+
+	/* The journal restarts in the same step, so the two always match on disk. */
+	synchronized void submitSnapshot(int fingerprint, Runnable write) {
+		snapshot = write;
+		journal.restart(fingerprint);
+		submitted++;
+		notifyAll();
+	}
+
+
+	synchronized void flush() {
+		long target = submitted;
+
+		flushTarget = Math.max(flushTarget, target);
+		notifyAll();
+		while (written < target && thread.isAlive())
+			try {
+				wait();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+	}
+
+
+	/* Only the first call closes the journal; the hook is dropped so a closed writer is not kept until exit. */
+	@Override
+	public void close() {
+		boolean first;
+
+		synchronized (this) {
+			first = !closed;
+			closed = true;
+			notifyAll();
+		}
+		if (first)
+			try {
+				Runtime.getRuntime().removeShutdownHook(hook);
+			}
+			catch (IllegalStateException e) {
+				/* The JVM is already shutting down, and this may be the hook itself. */
+			}
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (first)
+			journal.close();
+	}
+
+
+	private void run() {
+		while (true) {
+			Runnable task;
+			boolean hasFrame;
+			int moves;
+			long sequence;
+
+			synchronized (this) {
+				try {
+					long delay;
+					while ((delay = delay()) != 0)
+						wait(delay < 0 ? 0 : delay);
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+				if (submitted == written && closed)
+					return;
+				task = snapshot;
+				snapshot = null;
+				hasFrame = frameDirty;
+				if (frameDirty) {
+					ColorImage tmp = writingFrame;
+					writingFrame = frame;
+					frame = tmp;
+					frameDirty = false;
+				}
+				moves = journal.swap();
+				sequence = submitted;
+			}
+			try {
+				if (task != null)
+					task.run();
+				journal.write(moves);
+				if (hasFrame)
+					writingFrame.writeImg();
+			}
+			catch (RuntimeException e) {
+				System.out.println("Não foi possível guardar o jogo: " + e.getMessage());
+			}
+			synchronized (this) {
+				written = sequence;
+				lastWrite = System.currentTimeMillis();
+				notifyAll();
+			}
+		}
+	}
+
+
+	/* 0 when the writer should write now, otherwise how long to wait (-1 for a notify). */
+	private long delay() {
+		if (closed || flushTarget > written)
+			return 0;
+		if (submitted == written)
+			return -1;
+		switch (durability) {
+		  case PER_MOVE:
+			return 0;
+		  case BATCHED:
+			long left = lastWrite + Params.BATCH_MILLIS - System.currentTimeMillis();
+			return left <= 0 ? 0 : left;
+		  default:
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package sudoku.runner;
+
+/**
+ * A ready to play puzzle together with its solution.
+ */
+final class Puzzle {
+	final PackedBoard board;
+	final PackedBoard solution;
+
+
+	Puzzle(PackedBoard board, PackedBoard solution) {
+		this.board = board;
+		this.solution = solution;
+	}
+}
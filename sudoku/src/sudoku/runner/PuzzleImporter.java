@@ -0,0 +1,389 @@
+package sudoku.runner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams puzzles out of large text files with one puzzle per line: 81
+ * characters where empty cells are '0' or '.' (the 81-char, dot and SDM
+ * formats). Anything after the 81 cells must be separated by a space or a
+ * comma (ratings, solutions) and is ignored; empty lines and lines starting
+ * with '#' are skipped. runPairs reads lines holding two boards instead,
+ * separated by a space or a comma (a puzzle and a claimed solution).
+ *
+ * One thread reads the file in chunks that end on a line break; the chunks
+ * are parsed in parallel. Each chunk is handled by a single thread, in line
+ * order, and chunks are numbered in file order. Malformed lines are reported
+ * with their line number and the run goes on; a line too long for a chunk is
+ * reported by the chunk that follows it.
+ */
+final class PuzzleImporter {
+
+	/** Receives the parsed puzzles. Methods are called from the parsing threads. */
+	interface Sink {
+		/* The board is reused once the call returns. */
+		void puzzle(long chunk, long line, PackedBoard puzzle);
+
+		void malformed(long chunk, long line, String reason);
+
+		/* Empty and comment lines. */
+		default void skipped(long chunk, long line) {
+		}
+
+		/* Called after the last puzzle of a chunk. */
+		default void chunkDone(long chunk) {
+		}
+	}
+
+	/** Receives the (puzzle, solution) pairs read by runPairs. */
+	interface PairSink extends Sink {
+		/* Both boards are reused once the call returns. */
+		void pair(long chunk, long line, PackedBoard puzzle, PackedBoard solution);
+
+		@Override
+		default void puzzle(long chunk, long line, PackedBoard puzzle) {
+		}
+	}
+
+	private final int threads, chunkSize;
+	private final AtomicLong puzzles = new AtomicLong(), malformed = new AtomicLong();
+	private long chunks;
+
+
+	PuzzleImporter(int threads, int chunkSize) {
+		if (threads < 1 || chunkSize < 128)
+			throw new IllegalArgumentException("Numero de threads/Tamanho de bloco invalido!");
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+	}
+
+
+	/* Imports every puzzle of file into sink, returning how many were read. */
+	long run(String file, Sink sink) {
+		return read(file, sink, null);
+	}
+
+
+	/* Imports every pair of file into sink, returning how many were read. */
+	long runPairs(String file, PairSink sink) {
+		return read(file, sink, sink);
+	}
+
+
+	private long read(String file, Sink sink, PairSink pairs) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayBlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(threads * 2);
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+		puzzles.set(0);
+		malformed.set(0);
+		chunks = 0;
+		for (int i = 0; i < threads * 2; i++)
+			free.add(ByteBuffer.allocate(chunkSize));
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			long line = 1;
+			boolean eof = false, skipping = false;
+			List<Long> tooLong = new ArrayList<>();
+			ByteBuffer chunk = free.take();
+			chunk.clear();
+			while (failure.get() == null) {
+				while (chunk.hasRemaining() && !eof)
+					eof = channel.read(chunk) < 0;
+				chunk.flip();
+				if (skipping) {
+					int next = indexOf(chunk, '\n');
+					if (next < 0 && !eof) {
+						chunk.clear();
+						continue;
+					}
+					chunk.position(next < 0 ? chunk.limit() : next + 1);
+					chunk.compact();
+					line++;
+					skipping = false;
+					continue;
+				}
+				int end = eof ? chunk.limit() : lastIndexOf(chunk, '\n') + 1;
+				if (end == 0 && !eof) {
+					tooLong.add(line);
+					skipping = true;
+					chunk.clear();
+					continue;
+				}
+				ByteBuffer next = free.take();
+				next.clear();
+				next.put(chunk.array(), end, chunk.limit() - end);
+				chunk.limit(end);
+				long first = line, number = chunks++;
+				ByteBuffer parsed = chunk;
+				List<Long> skipped = tooLong;
+				line += count(chunk, '\n');
+				tooLong = new ArrayList<>();
+				pool.execute(() -> {
+					try {
+						for (long l : skipped) {
+							malformed.incrementAndGet();
+							sink.malformed(number, l, "Linha com mais de " + chunkSize + " caracteres");
+						}
+						parse(parsed, number, first, sink, pairs);
+					}
+					catch (RuntimeException e) {
+						failure.compareAndSet(null, e);
+					}
+					finally {
+						free.add(parsed);
+					}
+				});
+				chunk = next;
+				if (eof)
+					break;
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("O ficheiro " + file + " não foi lido!");
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			pool.shutdown();
+			try {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (failure.get() != null)
+			throw failure.get();
+		return puzzles.get();
+	}
+
+
+	long puzzles() {
+		return puzzles.get();
+	}
+
+
+	long malformed() {
+		return malformed.get();
+	}
+
+
+	long chunks() {
+		return chunks;
+	}
+
+
+	private void parse(ByteBuffer chunk, long number, long line, Sink sink, PairSink pairs) {
+		PackedBoard board = new PackedBoard(), second = pairs == null ? null : new PackedBoard();
+		byte[] b = chunk.array();
+		int end = chunk.limit();
+
+		for (int start = 0; start < end; line++) {
+			int stop = start;
+			while (stop < end && b[stop] != '\n')
+				stop++;
+			int last = stop > start && b[stop - 1] == '\r' ? stop - 1 : stop;
+			String error = parseLine(b, start, last, board, second);
+			if (error == null) {
+				puzzles.incrementAndGet();
+				if (pairs == null)
+					sink.puzzle(number, line, board);
+				else
+					pairs.pair(number, line, board, second);
+			}
+			else if (!error.isEmpty()) {
+				malformed.incrementAndGet();
+				sink.malformed(number, line, error);
+			}
+			else
+				sink.skipped(number, line);
+			start = stop + 1;
+		}
+		sink.chunkDone(number);
+	}
+
+
+	/*
+	 * Reads board (and second, when not null) from a line. Returns null for a
+	 * puzzle, "" for a line to skip, otherwise what is wrong.
+	 */
+	private static String parseLine(byte[] b, int start, int end, PackedBoard board, PackedBoard second) {
+		while (start < end && isSeparator(b[start]))
+			start++;
+		if (start == end || b[start] == '#')
+			return "";
+		String error = parseBoard(b, start, end, board);
+		if (error != null)
+			return error;
+		start += PackedBoard.SIZE;
+		if (second != null) {
+			if (start == end)
+				return "Falta o segundo tabuleiro";
+			if (!isSeparator(b[start]))
+				return "Linha com mais de 81 casas";
+			while (start < end && isSeparator(b[start]))
+				start++;
+			if ((error = parseBoard(b, start, end, second)) != null)
+				return "Segundo tabuleiro: " + error;
+			start += PackedBoard.SIZE;
+		}
+		if (start < end && !isSeparator(b[start]))
+			return "Linha com mais de 81 casas";
+		return null;
+	}
+
+
+	private static String parseBoard(byte[] b, int start, int end, PackedBoard board) {
+		for (int i = 0; i < PackedBoard.SIZE; i++) {
+			if (start + i >= end)
+				return "Linha com " + i + " casas em vez de 81";
+			int c = b[start + i];
+			if (c >= '0' && c <= '9')
+				board.set(i, c - '0');
+			else if (c == '.')
+				board.set(i, 0);
+			else
+				return "Caracter invalido '" + (char) c + "' na casa " + (i + 1);
+		}
+		return null;
+	}
+
+
+	private static boolean isSeparator(byte c) {
+		return c == ' ' || c == '\t' || c == ',';
+	}
+
+
+	private static int indexOf(ByteBuffer b, int c) {
+		for (int i = b.position(); i < b.limit(); i++)
+			if (b.get(i) == c)
+				return i;
+		return -1;
+	}
+
+
+	private static int lastIndexOf(ByteBuffer b, int c) {
+		for (int i = b.limit() - 1; i >= b.position(); i--)
+			if (b.get(i) == c)
+				return i;
+		return -1;
+	}
+
+
+	private static long count(ByteBuffer b, int c) {
+		byte[] a = b.array();
+		long n = 0;
+
+		for (int i = 0; i < b.limit(); i++)
+			if (a[i] == c)
+				n++;
+		return n;
+	}
+
+
+	/* Appends every puzzle of file to library in file order, printing the malformed lines. */
+	static long toLibrary(String file, PuzzleLibrary library, int threads) {
+		PuzzleImporter importer = new PuzzleImporter(threads, 1 << 22);
+
+		return importer.run(file, new LibrarySink(library, threads * 4));
+	}
+
+
+	/*
+	 * Packs the puzzles of each chunk on its parsing thread and appends whole
+	 * chunks in chunk order, so the index of a puzzle follows its line.
+	 */
+	private static final class LibrarySink implements Sink {
+		private final PuzzleLibrary library;
+		private final int window;
+		private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(PackedBoard.PACKED_SIZE * 1024));
+		private final Map<Long, ByteBuffer> pending = new HashMap<>();
+		private final PackedBoard board = new PackedBoard();
+		private long nextChunk;
+
+
+		LibrarySink(PuzzleLibrary library, int window) {
+			this.library = library;
+			this.window = window;
+		}
+
+
+		@Override
+		public void puzzle(long chunk, long line, PackedBoard puzzle) {
+			ByteBuffer b = buffers.get();
+
+			if (b.remaining() < PackedBoard.PACKED_SIZE) {
+				ByteBuffer bigger = ByteBuffer.allocate(b.capacity() * 2);
+				b.flip();
+				buffers.set(b = bigger.put(b));
+			}
+			puzzle.pack(b, b.position());
+			b.position(b.position() + PackedBoard.PACKED_SIZE);
+		}
+
+
+		@Override
+		public void malformed(long chunk, long line, String reason) {
+			System.out.println("Linha " + line + ": " + reason);
+		}
+
+
+		@Override
+		public void chunkDone(long chunk) {
+			ByteBuffer done = buffers.get();
+
+			done.flip();
+			buffers.set(ByteBuffer.allocate(done.capacity()));
+			synchronized (this) {
+				/* Same bound as BatchSolver: the chunk everyone waits for never waits here. */
+				while (chunk - nextChunk > window)
+					try {
+						wait();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				pending.put(chunk, done);
+				ByteBuffer next;
+				while ((next = pending.remove(nextChunk)) != null) {
+					for (int i = 0; i < next.limit(); i += PackedBoard.PACKED_SIZE) {
+						board.unpack(next, i);
+						library.append(board, PuzzleLibrary.UNKNOWN);
+					}
+					nextChunk++;
+				}
+				notifyAll();
+			}
+		}
+	}
+
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Uso: PuzzleImporter <puzzles.txt> <biblioteca.sudlib> [threads]");
+			return;
+		}
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		long start = System.nanoTime();
+		try (PuzzleLibrary library = new PuzzleLibrary(args[1])) {
+			long n = toLibrary(args[0], library, threads);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("%d puzzles importados em %.2f s (%.0f puzzles/s)%n", n, seconds, n / seconds);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package sudoku.runner;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File holding many puzzles in fixed size records, memory mapped so puzzle
+ * N is read in place in O(1). Layout, big endian:
+ *
+ * 0   magic "SUDL"
+ * 4   version, then 3 reserved bytes
+ * 8   record size
+ * 12  number of puzzles
+ * 16  records: the packed puzzle (41 bytes) and its difficulty band
+ *     (0 to 10, or UNKNOWN)
+ *
+ * The mapping grows by doubling when puzzles are appended, so the file can
+ * be longer than its puzzles; the count in the header is what counts.
+ * Reads may run concurrently; appends are serialized. A library opened read
+ * only is mapped read only, so read only and shared files can be played, and
+ * refuses appends.
+ */
+final class PuzzleLibrary implements AutoCloseable {
+	static final String EXTENSION = ".sudlib";
+	static final int UNKNOWN = 0xFF;
+	private static final int MAGIC = 0x5355444C;
+	private static final int VERSION = 1;
+	private static final int HEADER = 16;
+	private static final int RECORD = PackedBoard.PACKED_SIZE + 1;
+
+	private final FileChannel channel;
+	private final boolean readOnly;
+	private volatile MappedByteBuffer map;
+	private volatile int count;
+
+
+	PuzzleLibrary(String file) {
+		this(file, false);
+	}
+
+
+	/* Read only libraries must exist; the others are created when missing. */
+	PuzzleLibrary(String file, boolean readOnly) {
+		this.readOnly = readOnly;
+		try {
+			if (readOnly)
+				channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+			else
+				channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.READ,
+						StandardOpenOption.WRITE);
+			if (channel.size() == 0 && !readOnly) {
+				map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + 1024L * RECORD);
+				map.putInt(0, MAGIC);
+				map.put(4, (byte) VERSION);
+				map.putInt(8, RECORD);
+				map.putInt(12, 0);
+			}
+			else {
+				map = channel.map(readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, 0, channel.size());
+				if (channel.size() < HEADER || map.getInt(0) != MAGIC || map.getInt(8) != RECORD)
+					throw new IllegalArgumentException("O ficheiro " + file + " não é uma biblioteca de puzzles!");
+				if (map.get(4) != VERSION)
+					throw new IllegalArgumentException("Versão do ficheiro " + file + " não suportada!");
+				count = map.getInt(12);
+				if (count < 0 || HEADER + (long) count * RECORD > channel.size())
+					throw new IllegalArgumentException("O ficheiro " + file + " está corrompido!");
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("O ficheiro " + file + " não foi aberto!");
+		}
+	}
+
+
+	int size() {
+		return count;
+	}
+
+
+	/* Reads puzzle index straight from the mapping into out. */
+	void get(int index, PackedBoard out) {
+		check(index);
+		out.unpack(map, HEADER + index * RECORD);
+	}
+
+
+	PackedBoard get(int index) {
+		PackedBoard b = new PackedBoard();
+		get(index, b);
+		return b;
+	}
+
+
+	int difficulty(int index) {
+		check(index);
+		return map.get(HEADER + index * RECORD + PackedBoard.PACKED_SIZE) & 0xFF;
+	}
+
+
+	/* Adds a puzzle with its difficulty band (or UNKNOWN), returning its index. */
+	synchronized int append(PackedBoard puzzle, int difficulty) {
+		if (readOnly)
+			throw new IllegalStateException("A biblioteca de puzzles só pode ser lida!");
+		int index = count;
+		long end = HEADER + (long) (index + 1) * RECORD;
+
+		if (end > map.capacity())
+			grow(end);
+		puzzle.pack(map, HEADER + index * RECORD);
+		map.put(HEADER + index * RECORD + PackedBoard.PACKED_SIZE, (byte) difficulty);
+		map.putInt(12, index + 1);
+		count = index + 1;
+		return index;
+	}
+
+
+	/* Makes the appended puzzles durable. */
+	synchronized void force() {
+		if (!readOnly)
+			map.force();
+	}
+
+
+	@Override
+	public synchronized void close() {
+		try {
+			if (!readOnly)
+				map.force();
+			channel.close();
+		}
+		catch (IOException e) {
+			System.out.println("Não foi possível fechar a biblioteca de puzzles!");
+		}
+	}
+
+
+	private void grow(long end) {
+		long size = Math.max(end, 2L * map.capacity());
+
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalStateException("A biblioteca de puzzles está cheia!");
+		try {
+			map.force();
+			map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Não foi possível aumentar a biblioteca de puzzles!");
+		}
+	}
+
+
+	private void check(int index) {
+		if (index < 0 || index >= count)
+			throw new IllegalArgumentException("Puzzle " + index + " não existe!");
+	}
+}
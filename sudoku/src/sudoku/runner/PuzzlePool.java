@@ -0,0 +1,166 @@
+package sudoku.runner;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a stock of generated puzzles for every difficulty band (the tenths of
+ * the difficulty used by makeGame, 0.0 to 1.0). Worker threads refill the band
+ * with fewest ready puzzles and wait while every band is full, so take()
+ * normally just removes a puzzle from a queue. When a band is empty the
+ * puzzle is generated by the caller and counted as a miss.
+ */
+final class PuzzlePool implements AutoCloseable {
+	static final int BANDS = 11;
+
+	private final int capacity;
+	private final ArrayBlockingQueue<Puzzle>[] bands;
+	private final Thread[] workers;
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+	private final AtomicLong refills = new AtomicLong(), refillNanos = new AtomicLong();
+	private final int[] reserved = new int[BANDS];
+	private volatile boolean closed;
+
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	PuzzlePool(int capacity, int threads) {
+		if (capacity < 1 || threads < 1)
+			throw new IllegalArgumentException("Capacidade/Numero de threads invalido!");
+		this.capacity = capacity;
+		bands = new ArrayBlockingQueue[BANDS];
+		for (int i = 0; i < BANDS; i++)
+			bands[i] = new ArrayBlockingQueue<>(capacity);
+		workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(this::refill, "puzzle-pool-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+
+	Puzzle take(double difficulty) {
+		int band = band(difficulty);
+		Puzzle puzzle = bands[band].poll();
+
+		if (puzzle != null) {
+			hits.incrementAndGet();
+			synchronized (this) {
+				notifyAll();
+			}
+			return puzzle;
+		}
+		misses.incrementAndGet();
+		return generate(new GridGenerator(), new BacktrackingSolver(), band);
+	}
+
+
+	int size(double difficulty) {
+		return bands[band(difficulty)].size();
+	}
+
+
+	long hits() {
+		return hits.get();
+	}
+
+
+	long misses() {
+		return misses.get();
+	}
+
+
+	double hitRate() {
+		long h = hits.get(), total = h + misses.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+
+	long refills() {
+		return refills.get();
+	}
+
+
+	/* Average time taken by a worker to generate one puzzle. */
+	double averageRefillMillis() {
+		long n = refills.get();
+		return n == 0 ? 0 : refillNanos.get() / 1e6 / n;
+	}
+
+
+	@Override
+	public void close() {
+		closed = true;
+		for (Thread worker : workers)
+			worker.interrupt();
+	}
+
+
+	private void refill() {
+		GridGenerator generator = new GridGenerator();
+		SudokuSolver solver = new BacktrackingSolver();
+
+		try {
+			int band;
+			while ((band = reserve()) >= 0) {
+				long start = System.nanoTime();
+				Puzzle puzzle = generate(generator, solver, band);
+				long time = System.nanoTime() - start;
+				boolean added = bands[band].offer(puzzle);
+				synchronized (this) {
+					reserved[band]--;
+				}
+				if (added) {
+					refillNanos.addAndGet(time);
+					refills.incrementAndGet();
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/* Takes a slot in the emptiest band before generating, so two workers never fill the same slot; -1 once closed. */
+	private synchronized int reserve() throws InterruptedException {
+		int band;
+
+		while ((band = emptiest()) < 0) {
+			if (closed)
+				return -1;
+			wait();
+		}
+		if (closed)
+			return -1;
+		reserved[band]++;
+		return band;
+	}
+
+
+	/* Band with fewest ready or reserved puzzles, or -1 when every band is full. */
+	private int emptiest() {
+		int best = -1, bestSize = capacity;
+
+		for (int i = 0; i < BANDS; i++) {
+			int size = bands[i].size() + reserved[i];
+			if (size < bestSize) {
+				bestSize = size;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+
+	private static Puzzle generate(GridGenerator generator, SudokuSolver solver, int band) {
+		PackedBoard solution = generator.generate();
+		return new Puzzle(SudokuAux.boardSpace(solution, band / 10.0, solver), solution);
+	}
+
+
+	private static int band(double difficulty) {
+		int band = (int) (difficulty * 10);
+		return band < 0 ? 0 : band >= BANDS ? BANDS - 1 : band;
+	}
+}
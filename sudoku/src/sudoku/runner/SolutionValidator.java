@@ -0,0 +1,191 @@
+package sudoku.runner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Grades (puzzle, claimed solution) pairs in bulk, one pair per line as read
+ * by PuzzleImporter.runPairs. A solution is valid when it is complete, passes
+ * SudokuAux.checkBoard and keeps every clue of its puzzle.
+ *
+ * Pairs are checked in parallel on the importer threads, reusing the same
+ * boards, and the result is a bitmap with bit (line - 1) set for each line
+ * holding a valid pair (bit i is bit i % 8 of byte i / 8). writeBitmap
+ * stores it after a header of two little endian longs, the number of input
+ * lines and the number of pairs checked, followed by every word covering those
+ * lines, so failures at the end of a batch are kept.
+ */
+final class SolutionValidator {
+	static final int VALID = 0, INCOMPLETE = 1, CONFLICT = 2, WRONG_CLUE = 3;
+
+	private final int threads;
+	private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+	private final long[] counts = new long[4];
+	private long[] results = new long[1024];
+	private long pairs, malformed, nanos, lines;
+
+
+	/* Results of the chunk a pool thread is checking. */
+	private static final class Worker {
+		final long[] counts = new long[4];
+		long[] bits = new long[64];
+		long base = -1, lastLine;
+	}
+
+
+	SolutionValidator(int threads) {
+		this.threads = threads;
+	}
+
+
+	static int verdict(PackedBoard puzzle, PackedBoard solution) {
+		if (solution.countZeros() != 0)
+			return INCOMPLETE;
+		if (!SudokuAux.checkBoard(solution))
+			return CONFLICT;
+		for (int i = 0; i < PackedBoard.SIZE; i++)
+			if (puzzle.get(i) != 0 && puzzle.get(i) != solution.get(i))
+				return WRONG_CLUE;
+		return VALID;
+	}
+
+
+	/* Checks every pair of file, returning the result bitmap. */
+	long[] validate(String file) {
+		PuzzleImporter importer = new PuzzleImporter(threads, 1 << 20);
+		long start = System.nanoTime();
+
+		Arrays.fill(counts, 0);
+		Arrays.fill(results, 0);
+		lines = 0;
+		pairs = importer.runPairs(file, new PuzzleImporter.PairSink() {
+			@Override
+			public void pair(long chunk, long line, PackedBoard puzzle, PackedBoard solution) {
+				check(line, puzzle, solution);
+			}
+
+			@Override
+			public void malformed(long chunk, long line, String reason) {
+				System.out.println("Linha " + line + ": " + reason);
+				seen(line);
+			}
+
+			@Override
+			public void skipped(long chunk, long line) {
+				seen(line);
+			}
+
+			@Override
+			public void chunkDone(long chunk) {
+				merge();
+			}
+		});
+		malformed = importer.malformed();
+		nanos = System.nanoTime() - start;
+		return results;
+	}
+
+
+	private void check(long line, PackedBoard puzzle, PackedBoard solution) {
+		Worker w = workers.get();
+		int verdict = verdict(puzzle, solution);
+
+		w.counts[verdict]++;
+		w.lastLine = line;
+		if (w.base < 0)
+			w.base = (line - 1) & ~63L;
+		if (verdict == VALID) {
+			long bit = line - 1 - w.base;
+			int word = (int) (bit >>> 6);
+			if (word >= w.bits.length)
+				w.bits = Arrays.copyOf(w.bits, Math.max(word + 1, w.bits.length * 2));
+			w.bits[word] |= 1L << bit;
+		}
+	}
+
+
+	/* Lines come in order within a chunk, so the last one seen is the highest. */
+	private void seen(long line) {
+		workers.get().lastLine = line;
+	}
+
+
+	/* Adds the results of the chunk a thread has finished to the totals. */
+	private void merge() {
+		Worker w = workers.get();
+
+		synchronized (this) {
+			lines = Math.max(lines, w.lastLine);
+			w.lastLine = 0;
+			if (w.base < 0)
+				return;
+			int first = (int) (w.base >>> 6);
+			if (first + w.bits.length > results.length)
+				results = Arrays.copyOf(results, Math.max(first + w.bits.length, results.length * 2));
+			for (int i = 0; i < w.bits.length; i++)
+				results[first + i] |= w.bits[i];
+			for (int i = 0; i < counts.length; i++)
+				counts[i] += w.counts[i];
+		}
+		Arrays.fill(w.bits, 0);
+		Arrays.fill(w.counts, 0);
+		w.base = -1;
+	}
+
+
+	/* Number of input lines covered by the bitmap of the last validate. */
+	long lines() {
+		return lines;
+	}
+
+
+	long pairs() {
+		return pairs;
+	}
+
+
+	void report() {
+		double seconds = nanos / 1e9;
+
+		System.out.printf("%d pares verificados em %.2f s (%.0f pares/s)%n", pairs, seconds, pairs / seconds);
+		System.out.printf("Validas %d, incompletas %d, com conflitos %d, pistas alteradas %d, linhas invalidas %d%n",
+				counts[VALID], counts[INCOMPLETE], counts[CONFLICT], counts[WRONG_CLUE], malformed);
+	}
+
+
+	static void writeBitmap(String file, long[] bitmap, long lines, long pairs) {
+		int words = (int) ((lines + 63) >>> 6);
+		ByteBuffer b = ByteBuffer.allocate(16 + words * 8).order(ByteOrder.LITTLE_ENDIAN);
+
+		b.putLong(lines).putLong(pairs);
+		for (int i = 0; i < words; i++)
+			b.putLong(i < bitmap.length ? bitmap[i] : 0);
+		b.flip();
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			BoardCodec.write(channel, b);
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("O ficheiro " + file + " não foi escrito!");
+		}
+	}
+
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Uso: SolutionValidator <pares.txt> [resultados.bin] [threads]");
+			return;
+		}
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		SolutionValidator validator = new SolutionValidator(threads);
+		long[] bitmap = validator.validate(args[0]);
+		validator.report();
+		if (args.length > 1)
+			writeBitmap(args[1], bitmap, validator.lines(), validator.pairs());
+	}
+}
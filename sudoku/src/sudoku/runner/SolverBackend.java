@@ -0,0 +1,19 @@
+package sudoku.runner;
+
+/**
+ * The available solving engines, selectable by name.
+ */
+enum SolverBackend {
+	BACKTRACKING,
+	DANCING_LINKS;
+
+
+	SudokuSolver create() {
+		switch (this) {
+		  case DANCING_LINKS:
+			return new DancingLinksSolver();
+		  default:
+			return new BacktrackingSolver();
+		}
+	}
+}
@@ -1,33 +1,68 @@
 package sudoku.runner;
 
-import java.util.Scanner;
-import java.io.PrintWriter;
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import sudoku.framework.*;
 
 class Sudoku {
 	private String filename;
 	private SudokuBoard sudokuBoard;
+	private MoveJournal journal;
+	private PersistenceWriter writer;
+	private boolean binary;
 	public ColorImage boardImage;
 	
 	
 	public Sudoku(String file, double difficulty) {
-		String[] game = read_game(file);
 		boardImage = new ColorImage(470, 470);
 
 		filename = "";
 		for (int i = 0; file.charAt(i) != '.'; i++)
 			filename += file.charAt(i);
 		
-		if (file.indexOf("sudgame") != -1){
-			sudokuBoard = new SudokuBoard(game[0], game[1]);
-			sudokuBoard.loadSteps(filename);
+		if (file.endsWith(BinaryGame.EXTENSION)) {
+			binary = true;
+			sudokuBoard = BinaryGame.load(file);
 		}
+		else if (file.indexOf("sudgame") != -1)
+			sudokuBoard = readBoard(file);
 		else
-			sudokuBoard = new SudokuBoard(game[0]);
+			sudokuBoard = new SudokuBoard(read_game(file, 1)[0]);
 		sudokuBoard.makeGame(difficulty);
-		save();
+		open();
+	}
+	
+	
+	public Sudoku(double difficulty) {
+		boardImage = new ColorImage(470, 470);
+		filename = Params.GAME_NAME;
+		sudokuBoard = new SudokuBoard();
+		sudokuBoard.makeGame(difficulty);
+		open();
+	}
+	
+	
+	public Sudoku(PuzzlePool pool, double difficulty) {
+		boardImage = new ColorImage(470, 470);
+		filename = Params.GAME_NAME;
+		sudokuBoard = new SudokuBoard(pool.take(difficulty));
+		sudokuBoard.makeGame(difficulty);
+		open();
+	}
+	
+	
+	/* Only reads the library, so it may be opened read only. */
+	public Sudoku(PuzzleLibrary library, int index) {
+		PackedBoard puzzle = library.get(index);
+		
+		boardImage = new ColorImage(470, 470);
+		filename = Params.GAME_NAME;
+		sudokuBoard = new SudokuBoard(puzzle, puzzle.copy(), new History());
+		sudokuBoard.makeGame(0);
+		open();
 	}
 	
 	
@@ -49,68 +84,136 @@ class Sudoku {
 	}
 	
 	
+	public void useSolver(String backend) {
+		sudokuBoard.setSolver(SolverBackend.valueOf(backend).create());
+	}
+	
+	
+	public void Solve() {
+		sudokuBoard.solve();
+		save();
+	}
+	
+	
+	public void Redo() {
+		sudokuBoard.redo();
+		save();
+	}
+	
+	
 	public void Reset() {
 		sudokuBoard.reset();
 		save();
 	}
 	
 	
+	public boolean isFinished() {
+		return sudokuBoard.isFinished();
+	}
+	
+	
+	public int cellsRemaining() {
+		return sudokuBoard.cellsRemaining();
+	}
+	
+	
+	public int conflictsRemaining() {
+		return sudokuBoard.conflictsRemaining();
+	}
+	
+	
+	public int mistakes() {
+		return sudokuBoard.countMistakes();
+	}
+	
+	
+	/* Recovers the moves journaled since the last snapshot and starts a new journal. */
+	private void open() {
+		journal = new MoveJournal(filename);
+		journal.replay(sudokuBoard);
+		writer = new PersistenceWriter(journal, Params.DURABILITY, boardImage.getWidth(), boardImage.getHeight());
+		snapshot();
+		sudokuBoard.setJournal(journal);
+		save();
+	}
+	
+	
+	/* Renders the board and hands it to the background writer. */
 	private void save() {
 		sudokuBoard.applyOperations(boardImage);
-		write_game(filename + ".sudgame", sudokuBoard.getInitialBoard(), sudokuBoard.getGameBoard());
-		sudokuBoard.saveSteps(filename);
-		boardImage.writeImg();
+		if (journal.records() >= Params.SNAPSHOT_INTERVAL)
+			snapshot();
+		writer.submitFrame(boardImage);
+	}
+	
+	
+	private void snapshot() {
+		if (binary) {
+			ByteBuffer data = sudokuBoard.toBinary();
+			writer.submitSnapshot(sudokuBoard.fingerprint(), () -> BinaryGame.write(filename + BinaryGame.EXTENSION, data));
+			return;
+		}
+		ByteBuffer game = sudokuBoard.toText();
+		String steps = sudokuBoard.getSteps();
+		
+		writer.submitSnapshot(sudokuBoard.fingerprint(), () -> {
+			write_game(filename + ".sudgame", game);
+			SudokuBoard.saveSteps(filename, steps);
+		});
+	}
+	
+	
+	public void setDurability(Durability durability) {
+		writer.setDurability(durability);
+	}
+	
+	
+	/* Waits until every move made so far is on disk. */
+	public void flush() {
+		writer.flush();
+	}
+	
+	
+	public void close() {
+		writer.close();
+	}
+	
+	
+	/* Board and steps of a text save (.sudgame and .sudsteps). */
+	static SudokuBoard readBoard(String file) {
+		PackedBoard[] game = read_game(file, 2);
+		SudokuBoard board = new SudokuBoard(game[0], game[1], new History());
+		
+		board.loadSteps(file.substring(0, file.lastIndexOf('.')));
+		return board;
 	}
 	
 	
 	/* ______________3.0_________________ */
-	private String[] read_game(String file) {
-		try {
-			String game[] = new String[2];
-			Scanner scanner = new Scanner(new File(file));
+	/* Reads the first n boards of a text file (.sud has one, .sudgame two). */
+	private static PackedBoard[] read_game(String file, int n) {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			ByteBuffer in = BoardCodec.read(channel, ByteBuffer.allocate((int) channel.size()));
+			PackedBoard[] game = new PackedBoard[n];
 			
-			game[0] = "";
-			game[1] = "";
-			for(int i = 0; scanner.hasNextLine(); i++) {
-				if (i < 9) {
-					game[0] += scanner.nextLine();
-					game [0]+= "\n";
-				}
-				else if (i > 9) {
-					game[1] += scanner.nextLine();
-					game [1]+= "\n";
-				}
-				else
-					scanner.nextLine();
+			for (int i = 0; i < n; i++) {
+				game[i] = new PackedBoard();
+				BoardCodec.decode(in, game[i]);
 			}
-			scanner.close();
 			return game;
 		}
-		catch (FileNotFoundException e) {
+		catch (IOException e) {
 			throw new IllegalArgumentException("O ficheiro " + file + " não foi encontrado!");
 		}
 	}
 	
 	
-	private void write_game(String file, String matriz1, String matriz2) {
-		try {
-			PrintWriter writer = new PrintWriter(new File(file));
-			Scanner scanner1 = new Scanner(matriz1);
-			Scanner scanner2 = new Scanner(matriz2);
-			
-			for (int i = 0; scanner1.hasNextLine() || scanner2.hasNextLine(); i++) {
-				if (i < 9)
-					writer.println(scanner1.nextLine().replace("   ", " "));
-				else if (i > 9)
-					writer.println(scanner2.nextLine().replace("   ", " "));
-				else
-					writer.println("");
-			}
-			writer.close();
-			scanner1.close();
-			scanner2.close();
+	private void write_game(String file, ByteBuffer game) {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			BoardCodec.write(channel, game.duplicate());
 		}
-		catch (FileNotFoundException e) {
+		catch (IOException e) {
 			throw new IllegalArgumentException("O ficheiro *.subgame não foi escrito!");
 		}
 	}
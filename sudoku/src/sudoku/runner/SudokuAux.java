@@ -5,159 +5,53 @@ import sudoku.framework.*;
 class SudokuAux {
 
 	/* ______________1.0_________________ */
-	static boolean checkRepetition(int[] v) {
-		for (int i = 0; i < v.length; i++) {
-			if (v[i] == 0)
-				continue;
-			for (int j = 0; j < v.length; j++) {
-				if (i == j || v[j] == 0)
-					continue;
-				if (v[i] == v[j])
-						return (false);
-			}
-		}
-		return (true);
-	}
-	
-	
-	static boolean checkColumn(int[][] b, int x) {
-		int[] vp = new int[9];
-
-		for (int j = 0; j < b.length; j++) {
-			if (b[j][x] < 0 || b[j][x] > 9)
-				return false;
-			vp[j] = b[j][x];
-		}		
-		if (!checkRepetition(vp))
-			return false; 
-		return true;
-	}
-	
-	
-	static boolean checkRow(int[][] b, int y) {
-		int[] vp = new int[9];
-
-		for (int j = 0; j < b.length; j++) {
-			if (b[y][j] < 0 || b[y][j] > 9)
-				return false;
-			vp[j] = b[y][j];
-		}		
-		if (!checkRepetition(vp))
-			return false; 
-		return true;
+	static boolean checkBoard(int[][] b) {
+		return SudokuConstraints.check(b);
 	}
 	
 	
-	static boolean checkSegment(int[][] b, int x, int y) {
-		int k = 0;
-		int[] segment = new int[9];
-		
-		for (int i = y; i < y + 3; i++) {
-			for (int j = x; j < x + 3; j++) {
-				segment[k] = b[i][j];
-				k++;
-			}
-		}
-		if (!checkRepetition(segment))
-				return (false);
-		return (true);
-	}
-	
-	static boolean checkBoard(int[][] b) {
-		if (b.length != 9)
-			return (false);
-		for (int i = 0; i < b.length; i++) {
-			if (b[i].length != 9)
-				return (false);
-			if(!checkColumn(b, i) || !checkRow(b, i))
-				return false;
-		}
-		for (int i = 0; i <= 6; i += 3)
-			for (int j = 0; j <= 6; j += 3)
-			if (!checkSegment(b, i, j))
-					return false;
-		return true;
+	static boolean checkBoard(PackedBoard b) {
+		return SudokuConstraints.check(b);
 	}
 	
 	/* ______________2.0_________________ */
-	static int[][] boardSpace(int[][] b, double p) {
-		int max = (int)(p * 10);
-		int bs[][] = new int[9][9];
+	/* Blanks cells in random order, keeping only the removals that leave a single solution. */
+	static PackedBoard boardSpace(PackedBoard b, double p, SudokuSolver solver) {
+		int max = (int)(p * 10), spaces = 0;
+		int target = max * PackedBoard.SIZE / 10;
+		int[] order = new int[PackedBoard.SIZE];
+		PackedBoard bs = b.copy();
 		
-		for (int y = 0; y < b.length; y++) {
-			for (int x = 0; x < b[y].length; x++) {
-				if ((int) (Math.random() * 10) + 1 <= max)
-					bs[y][x] = 0;
-				else
-					bs[y][x] = b[y][x];
-			}
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		shuffle(order);
+		for (int i = 0; i < order.length && spaces < target; i++) {
+			int v = bs.get(order[i]);
+			bs.set(order[i], 0);
+			if (solver.isUnique(bs))
+				spaces++;
+			else
+				bs.set(order[i], v);
 		}
 		return bs;
 	}
 	
-	/* ______________3.0_________________ */
-	static String matrizToString (int[][] b) {
-		String sx = "";
-		
-		for (int y = 0; y < b.length; y++) {
-			for (int x = 0; x < b[y].length; x++) {
-				sx += b[y][x];
-				if (x < b[y].length - 1)
-					sx += "   ";
-			}
-			if ( y < b.length - 1)
-				sx += "\n";
-		}
-		return sx;
-	}
-	
-	
-	static int[][] stringToMatriz(String matriz) {		
-		int c = 0;
-		int[][] b = new int[9][9];
-		
-		for (int y = 0; y < b.length; y++) {
-			for (int x = 0; x < b[y].length; x++) {
-				if (matriz.charAt(c) == ' ' || matriz.charAt(c) == '\n')
-					c++;
-				b[y][x] = matriz.charAt(c) - '0' ;
-				c++;
-			}
-		}
-		return (b);
-	}
-	
+	static final String[] DIGITS = {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"};
 	
 	/* ______________4.0_________________ */
-	static ColorImage makeImg(int[][] b) {
-		int p = 10;
-		int[][] s = new int[1][9];
-    	ColorImage img = new ColorImage(470, 470);
-
-		for (int i = 0; i < 9; i++, p += 50) {
-			s[0] = b[i];
-	    	img.drawText(20, p, matrizToString(s), 37, Params.PRIMARY_COLOR);
-		}
-		makeSegments(img, Params.PRIMARY_COLOR);
-		return (img);
-	}
-	
-	
 	private static void makeColumn(ColorImage img, Color c, int x, int y) {
-		for (int i = y; i < y + 150 && i < img.getHeight() - 10; i++) {
-			img.setColor(x, i, c);
-			img.setColor(x - 2, i - 2, c);
-		}
-
+		int n = Math.min(y + 150, img.getHeight() - 10) - y;
+		
+		img.FillRect(x, y, 1, n, c);
+		img.FillRect(x - 2, y - 2, 1, n, c);
 	}
 	
 	
 	private static void makeRow(ColorImage img, Color c, int x, int y) {
-		for (int i = x; i < x + 150 && i < img.getWidth() - 10; i++) {
-			img.setColor(i, y, c);
-			img.setColor(i - 2, y - 2, c);
-		}
-
+		int n = Math.min(x + 150, img.getWidth() - 10) - x;
+		
+		img.FillRect(x, y, n, 1, c);
+		img.FillRect(x - 2, y - 2, n, 1, c);
 	}
 	
 	
@@ -172,12 +66,8 @@ class SudokuAux {
 	
 	/* ______________5.0_________________ */
 	static void changePosition(ColorImage img, int x, int y, int v) {
-		for (int i = 15 + (50 * y) ; i < 4 + (50 * (y + 1)); i++) {
-			for (int j = 15 + (50 * x); j < 4 + (50 * (x + 1)); j++) {
-				img.setColor(j, i, Params.PLAY_COLOR);
-			}
-		}
-		img.drawText(20 + (50 * x) + x, 10 + (50 * y), Integer.toString(v) , 37, new Color(255, 255, 255));
+		img.FillRect(15 + (50 * x), 15 + (50 * y), 39, 39, Params.PLAY_COLOR);
+		img.drawText(20 + (50 * x) + x, 10 + (50 * y), DIGITS[v], 37, Params.PRIMARY_COLOR);
 	}
 	
 	
@@ -231,24 +121,5 @@ class SudokuAux {
 			v[j] = tmp;
 		}
 	}
-	
-	
-	static int indexOfSeg(int i) {
-		if (i < 3)
-			return (1);
-		else if (i >= 3 && i < 6)
-			return (2);
-		else
-			return (3);
-	}
-	
-	
-	static int[][] copyMatrix(int[][] b) {
-		int[][] copy = new int[b.length][b[0].length];
-		
-		for (int i = 0; i < b.length; i++)
-			for (int j = 0; j < b[i].length; j++)
-				copy[i][j] = b[i][j];
-		return copy;
-	}
+
 }
\ No newline at end of file
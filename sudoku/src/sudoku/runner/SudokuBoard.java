@@ -4,75 +4,84 @@ import java.util.Scanner;
 import java.io.PrintWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
 import sudoku.framework.*;
 
 
 class SudokuBoard {
 	
-	private int iSteps;
-	private Storage[] steps;
-	private ColorImage auxiliaryImage;
-	private int[][] finishedBoard, initialBoard, gameBoard;
+	private History history = new History();
+	private MoveJournal journal;
+	private BoardRenderer renderer = new BoardRenderer();
+	private SudokuConstraints constraints = new SudokuConstraints();
+	private SudokuSolver solver = SolverBackend.BACKTRACKING.create();
+	private PackedBoard finishedBoard, initialBoard, gameBoard;
 
 	
 	/* ______________1.0_________________ */
-	SudokuBoard(String matriz1, String matriz2) {
-		iSteps = 0;
-		steps = new Storage[81];
-		initialBoard = SudokuAux.stringToMatriz(matriz1);
-		gameBoard = SudokuAux.stringToMatriz(matriz2);
+	SudokuBoard(PackedBoard finished) {
+		finishedBoard = finished;
 	}
 	
 	
-	SudokuBoard(String matriz) {
-		iSteps = 0;
-		steps = new Storage[81];
-		finishedBoard = SudokuAux.stringToMatriz(matriz);
+	SudokuBoard() {
 	}
 	
 	
-	String getInitialBoard() {
-		return SudokuAux.matrizToString(initialBoard);
+	SudokuBoard(PackedBoard initial, PackedBoard game, History history) {
+		initialBoard = initial;
+		gameBoard = game;
+		this.history = history;
 	}
 	
 	
-	String getGameBoard() {
-		return SudokuAux.matrizToString(gameBoard);
+	SudokuBoard(Puzzle puzzle) {
+		initialBoard = puzzle.board.copy();
+		gameBoard = puzzle.board.copy();
+		finishedBoard = puzzle.solution.copy();
+	}
+	
+	
+	/* Initial and game boards in the .sudgame layout, separated by an empty line. */
+	ByteBuffer toText() {
+		byte[] separator = System.lineSeparator().getBytes();
+		ByteBuffer b = ByteBuffer.allocate(2 * BoardCodec.Format.SPACED.length() + separator.length);
+		
+		BoardCodec.encode(initialBoard, BoardCodec.Format.SPACED, b);
+		b.put(separator);
+		BoardCodec.encode(gameBoard, BoardCodec.Format.SPACED, b);
+		b.flip();
+		return b;
 	}
 	
 	
 	void makeGame(double p) {
 		if (initialBoard == null) {
-			if (!SudokuAux.checkBoard(finishedBoard) || !isFinished(finishedBoard))
-				p = 1;
-			initialBoard = SudokuAux.boardSpace(finishedBoard, p);
-			gameBoard = SudokuAux.copyMatrix(initialBoard);
+			if (finishedBoard == null)
+				finishedBoard = new GridGenerator().generate();
+			constraints.load(finishedBoard);
+			boolean valid = constraints.isSolved();
+			if (valid)
+				initialBoard = SudokuAux.boardSpace(finishedBoard, p, solver);
+			else {
+				initialBoard = new PackedBoard();
+				finishedBoard = null;
+			}
+			gameBoard = initialBoard.copy();
+		}
+		if (finishedBoard == null) {
+			finishedBoard = new PackedBoard();
+			if (!solver.solve(initialBoard, finishedBoard))
+				finishedBoard = null;
 		}
-		auxiliaryImage = SudokuAux.makeImg(gameBoard);
+		constraints.load(gameBoard);
+		renderer.load(initialBoard, gameBoard);
 	}
 	
 	
+	/* Repaints only what changed since the last call; moves made since then are highlighted. */
 	void applyOperations(ColorImage finalImage) {
-		Storage[][] invalidPlace = {storeInvalidRows(), storeInvalidColumns(), storeInvalidSegments()};
-		
-		finalImage.Copy(auxiliaryImage);
-		auxiliaryImage = SudokuAux.makeImg(gameBoard);
-		for (int i = 0; i < invalidPlace.length ; i++) {
-			for (int j = 0; j < invalidPlace[i].length; j++)
-				if (invalidPlace[i][j] != null)
-					switch(i) {
-					  case 0:
-						  SudokuAux.atentionRow(finalImage, invalidPlace[i][j].getY());
-					    break;
-					  case 1:
-						  SudokuAux.atentionColumn(finalImage, invalidPlace[i][j].getX());
-					    break;
-					  default:
-						  SudokuAux.atentionSegments(finalImage, invalidPlace[i][j].getX(), invalidPlace[i][j].getY());
-					}
-		}
-		if (isFinished(gameBoard))
-			SudokuAux.makeSegments(finalImage, Params.FINISHED_COLOR);
+		renderer.render(finalImage, gameBoard, constraints, isFinished());
 	}
 	
 	
@@ -80,65 +89,121 @@ class SudokuBoard {
 	void putNumber(int x, int y, int v) {
 		if ((x < 0 || x > 8) || (y < 0 || y > 8) || (v < 1 || v > 9))
 			throw new IllegalArgumentException("Coordenada/Valor invalida!");
-		if (gameBoard[y][x] == 0) {
-			steps[iSteps++] = new Storage(x, y, gameBoard[y][x]);
-			gameBoard[y][x] = v;
-			SudokuAux.changePosition(auxiliaryImage, x, y, v);
+		if (gameBoard.get(x, y) == 0) {
+			history.push(History.pack(x, y, 0, v));
+			record(MoveJournal.PUT, History.pack(x, y, 0, v));
+			gameBoard.set(x, y, v);
+			constraints.set(x, y, 0, v);
+			renderer.highlight(x, y);
 		}	
 	}
 	
 	
 	/* ______________4.0_________________ */
+	/* Checked before playing, so a rejected number never reaches the history or the journal. */
 	void randomPlay(){
-		boolean done;
 		Storage[] zeros = storeZeros();
 		int[] v = {1, 2, 3, 4, 5, 6, 7, 8, 9};
 
 		SudokuAux.shuffle(v);
 		for (int i = 0; i < zeros.length; i++) {
-			for (int j = 0; j < v.length; j++) {
-				done = true;
-				putNumber(zeros[i].getX(), zeros[i].getY(), v[j]);
-				Storage[] invS = storeInvalidSegments();
-				for (int k = 0; k < invS.length && invS[k] != null; k++) {
-					if (invS[k].getX() == SudokuAux.indexOfSeg(zeros[i].getX()) 
-							&& invS[k].getY() == SudokuAux.indexOfSeg(zeros[i].getY())) {
-						undo();
-						done = false;
-					}
-				}
-				if (done)
+			int x = zeros[i].getX(), y = zeros[i].getY();
+			for (int j = 0; j < v.length; j++)
+				if (constraints.fitsSegment(SudokuConstraints.segmentOf(x, y), v[j])) {
+					putNumber(x, y, v[j]);
 					return;
-			}
+				}
 		}
 	}
 	
 	
+	void setSolver(SudokuSolver solver) {
+		this.solver = solver;
+	}
+	
+	
+	void solve() {
+		if (finishedBoard == null)
+			throw new IllegalStateException("O tabuleiro não tem solução!");
+		for (int i = 0; i < PackedBoard.SIZE; i++)
+			if (gameBoard.get(i) == 0)
+				putNumber(i % 9, i / 9, finishedBoard.get(i));
+	}
+	
+	
+	/* Number of filled cells that differ from the solution. */
+	int countMistakes() {
+		int n = 0;
+		
+		if (finishedBoard == null)
+			return 0;
+		for (int i = 0; i < PackedBoard.SIZE; i++)
+			if (gameBoard.get(i) != 0 && gameBoard.get(i) != finishedBoard.get(i))
+				n++;
+		return n;
+	}
+	
+	
 	/* ______________5.0_________________ */
 	void reset() {
-		iSteps = 0;
-		gameBoard = SudokuAux.copyMatrix(initialBoard);
-		auxiliaryImage = SudokuAux.makeImg(gameBoard);
+		history.clear();
+		record(MoveJournal.RESET, 0);
+		gameBoard.copyFrom(initialBoard);
+		constraints.load(gameBoard);
+		renderer.clearHighlights();
 	}
 	
 	
 	/* ______________9.0_________________ */
 	void undo() {
-		if (iSteps - 1 >= 0) {
-			Storage lasp = steps[iSteps - 1];
-			gameBoard[lasp.getY()][lasp.getX()] = lasp.getV();
-			auxiliaryImage = SudokuAux.makeImg(gameBoard);
-			iSteps--;
+		int move = history.undo();
+		
+		if (move >= 0) {
+			int x = History.x(move), y = History.y(move);
+			record(MoveJournal.UNDO, move);
+			constraints.set(x, y, gameBoard.get(x, y), History.oldValue(move));
+			gameBoard.set(x, y, History.oldValue(move));
+			renderer.clearHighlights();
+		}
+	}
+	
+	
+	void redo() {
+		int move = history.redo();
+		
+		if (move >= 0) {
+			int x = History.x(move), y = History.y(move);
+			record(MoveJournal.REDO, move);
+			constraints.set(x, y, gameBoard.get(x, y), History.newValue(move));
+			gameBoard.set(x, y, History.newValue(move));
+			renderer.highlight(x, y);
 		}
 	}
 
 	
-	void saveSteps(String file) {
+	ByteBuffer toBinary() {
+		return BinaryGame.encode(initialBoard, gameBoard, history);
+	}
+	
+	
+	String getSteps() {
+		StringBuilder sb = new StringBuilder();
+		
+		for (int i = 0; i < history.total(); i++) {
+			int move = history.get(i);
+			sb.append(History.x(move)).append(' ').append(History.y(move)).append(' ')
+				.append(History.oldValue(move)).append(' ').append(History.newValue(move))
+				.append(i < history.size() ? "" : " r").append(System.lineSeparator());
+		}
+		return sb.toString();
+	}
+	
+	
+	static void saveSteps(String file, String steps) {
 		try {
 			PrintWriter writer = new PrintWriter(new File(file + ".sudsteps"));
 			
-			for (int i = 0; i < iSteps; i++)
-				writer.println(steps[i].getX() + " " + steps[i].getY() + " " + steps[i].getV());
+			writer.print(steps);
 			writer.close();
 		}
 		catch (FileNotFoundException e) {
@@ -151,12 +216,21 @@ class SudokuBoard {
 		try {
 			Scanner scan = new Scanner(new File(file + ".sudsteps"));
 			
-			for (int i = 0; scan.hasNextLine(); i++) {
+			int redoable = 0;
+			
+			history.clear();
+			while (scan.hasNextLine()) {
 				String line = scan.nextLine();
+				if (line.length() < 5)
+					continue;
 				int x = line.charAt(0) - '0', y = line.charAt(2) - '0', v = line.charAt(4) - '0';
-				steps[i] = new Storage (x, y, v);
-				iSteps = i + 1;
+				int placed = line.length() >= 7 ? line.charAt(6) - '0' : gameBoard.get(x, y);
+				history.push(History.pack(x, y, v, placed));
+				if (line.endsWith(" r"))
+					redoable++;
 			}
+			for (int i = 0; i < redoable; i++)
+				history.undo();
 		}
 		catch (FileNotFoundException e) {
 			System.out.println("Não foi possível carregar as jogadas!");
@@ -164,25 +238,47 @@ class SudokuBoard {
 	}
 
 	
+	void setJournal(MoveJournal journal) {
+		this.journal = journal;
+	}
+	
+	
+	/* Identifies the saved state (boards and history) a journal applies to. */
+	int fingerprint() {
+		int h = 31 * initialBoard.hashCode() + gameBoard.hashCode();
+		
+		for (int i = 0; i < history.total(); i++)
+			h = 31 * h + history.get(i);
+		return 31 * h + history.size();
+	}
+	
+	
+	private void record(int op, int move) {
+		if (journal != null)
+			journal.append(op, move);
+	}
+	
+	
 	/* ______________8.0_________________ */
-	private boolean isFinished(int[][] b) {
-		for (int y = 0; y < b.length; y++) {
-			int cx = 0, cy = cx;
-			for (int x = 0; x < b[y].length; x++) {
-				cx += b[y][x];
-				cy += b[x][y];
-			}
-			if (cx != 45 || cy != 45)
-				return false;
-		}
-		return true;
+	boolean isFinished() {
+		return constraints.isSolved();
+	}
+	
+	
+	int cellsRemaining() {
+		return constraints.cellsRemaining();
+	}
+	
+	
+	int conflictsRemaining() {
+		return constraints.conflictsRemaining();
 	}
 	
 	
 	/* ______________2.0_________________ */
 	private int numberAtPosition(int x, int y) {
 		if ((x >= 0 && x <= 8) && (y >= 0 && y <= 8))
-			return gameBoard[y][x];
+			return gameBoard.get(x, y);
 		else
 			throw new IllegalArgumentException("Coordenada invalida!");
 	}
@@ -190,15 +286,7 @@ class SudokuBoard {
 	
 	/* ______________4.0_________________ */
 	private int numberOfZeros() {
-		int i = 0;
-		
-		for (int y = 0; y < gameBoard.length; y++) {
-			for (int x = 0; x < gameBoard[y].length; x++) {
-				if (numberAtPosition(x, y) == 0)
-					i++;
-			}
-		}
-		return i;
+		return gameBoard.countZeros();
 	}
 	
 	
@@ -206,8 +294,8 @@ class SudokuBoard {
 		int i = 0;
 		Storage[] zeros = new Storage[numberOfZeros()];
 		
-		for (int y = 0; y < gameBoard.length; y++) {
-			for (int x = 0; x < gameBoard[y].length; x++) {
+		for (int y = 0; y < 9; y++) {
+			for (int x = 0; x < 9; x++) {
 				if (numberAtPosition(x, y) == 0) {					
 					zeros[i] = new Storage(x, y);
 					i++;
@@ -217,49 +305,4 @@ class SudokuBoard {
 		SudokuAux.shuffleStorage(zeros);
 		return (zeros);
 	}
-	
-	
-	/* ______________6.0_________________ */
-	private Storage[] storeInvalidSegments() {
-		int i = 0;
-		Storage[] invS = new Storage[9];
-		
-		for (int y = 0; y <= 6; y += 3)
-			for (int x = 0; x <= 6; x += 3){
-				if (!SudokuAux.checkSegment(gameBoard, x, y)) {
-					invS[i] = new Storage ((x / 3) + 1, (y / 3) + 1);
-					i++;
-				}
-			}
-		return (invS);
-	}
-	
-	
-	/* ______________7.0_________________ */
-	private Storage[] storeInvalidRows(){
-		int i = 0;
-		Storage[] invR = new Storage[9];
-		
-		for (int y = 0; y < gameBoard.length; y++) {
-			if (!SudokuAux.checkRow(gameBoard, y)) {
-				invR[i] = new Storage (0, y + 1);
-				i++;
-			}
-		}
-		return invR;
-	}
-	
-	
-	private Storage[] storeInvalidColumns() {
-		int i = 0;
-		Storage[] invC = new Storage[9];
-		
-		for (int x = 0; x < gameBoard.length; x++) {
-			if (!SudokuAux.checkColumn(gameBoard, x)) {
-				invC[i] = new Storage(x + 1, 0);
-				i++;
-			}
-		}
-		return invC;
-	}
 }
\ No newline at end of file
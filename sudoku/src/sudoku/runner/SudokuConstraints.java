@@ -0,0 +1,207 @@
+package sudoku.runner;
+
+/**
+ * Keeps the occupancy of every row, column and segment of a board as bitmasks
+ * (bit v set when the number v is present), together with the rows, columns
+ * and segments holding a repeated or out of range number.
+ * A move only updates the three houses containing the changed cell, and the
+ * number of filled cells is kept so that a solved board is detected in O(1).
+ */
+class SudokuConstraints {
+	private final int[] rows = new int[9];
+	private final int[] columns = new int[9];
+	private final int[] segments = new int[9];
+	private final byte[] counts = new byte[27 * 10];
+	private final int[] conflicts = new int[27];
+	private int invalidRows, invalidColumns, invalidSegments;
+	private int filled;
+
+
+	void load(PackedBoard b) {
+		clear();
+		for (int i = 0; i < PackedBoard.SIZE; i++)
+			add(i % 9, i / 9, b.get(i));
+	}
+
+
+	void clear() {
+		for (int i = 0; i < 9; i++) {
+			rows[i] = 0;
+			columns[i] = 0;
+			segments[i] = 0;
+		}
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = 0;
+		for (int i = 0; i < conflicts.length; i++)
+			conflicts[i] = 0;
+		invalidRows = 0;
+		invalidColumns = 0;
+		invalidSegments = 0;
+		filled = 0;
+	}
+
+
+	/* Replaces the number at (x, y), old being the number that was there. */
+	void set(int x, int y, int old, int v) {
+		if (old == v)
+			return;
+		remove(x, y, old);
+		add(x, y, v);
+	}
+
+
+	private void add(int x, int y, int v) {
+		if (v == 0)
+			return;
+		int s = segmentOf(x, y);
+		rows[y] = enter(y, rows[y], v);
+		columns[x] = enter(9 + x, columns[x], v);
+		segments[s] = enter(18 + s, segments[s], v);
+		filled++;
+		refresh(x, y, s);
+	}
+
+
+	private void remove(int x, int y, int v) {
+		if (v == 0)
+			return;
+		int s = segmentOf(x, y);
+		rows[y] = leave(y, rows[y], v);
+		columns[x] = leave(9 + x, columns[x], v);
+		segments[s] = leave(18 + s, segments[s], v);
+		filled--;
+		refresh(x, y, s);
+	}
+
+
+	private int enter(int house, int mask, int v) {
+		if (v < 0 || v > 9) {
+			conflicts[house]++;
+			return mask;
+		}
+		int c = ++counts[house * 10 + v];
+		if (c == 2)
+			conflicts[house]++;
+		return mask | (1 << v);
+	}
+
+
+	private int leave(int house, int mask, int v) {
+		if (v < 0 || v > 9) {
+			conflicts[house]--;
+			return mask;
+		}
+		int c = --counts[house * 10 + v];
+		if (c == 1)
+			conflicts[house]--;
+		return c == 0 ? mask & ~(1 << v) : mask;
+	}
+
+
+	private void refresh(int x, int y, int s) {
+		invalidRows = flag(invalidRows, y, conflicts[y] != 0);
+		invalidColumns = flag(invalidColumns, x, conflicts[9 + x] != 0);
+		invalidSegments = flag(invalidSegments, s, conflicts[18 + s] != 0);
+	}
+
+
+	private static int flag(int mask, int i, boolean on) {
+		return on ? mask | (1 << i) : mask & ~(1 << i);
+	}
+
+
+	boolean isValid() {
+		return (invalidRows | invalidColumns | invalidSegments) == 0;
+	}
+
+
+	/* The board is full and no row, column or segment has a repeated number. */
+	boolean isSolved() {
+		return filled == 81 && isValid();
+	}
+
+
+	int cellsRemaining() {
+		return 81 - filled;
+	}
+
+
+	/* Number of rows, columns and segments currently in conflict. */
+	int conflictsRemaining() {
+		return Integer.bitCount(invalidRows) + Integer.bitCount(invalidColumns) + Integer.bitCount(invalidSegments);
+	}
+
+
+	boolean isValidRow(int y) {
+		return (invalidRows & (1 << y)) == 0;
+	}
+
+
+	boolean isValidColumn(int x) {
+		return (invalidColumns & (1 << x)) == 0;
+	}
+
+
+	/* Segments are numbered 0..8 from left to right and top to bottom. */
+	boolean isValidSegment(int s) {
+		return (invalidSegments & (1 << s)) == 0;
+	}
+
+
+	/* Whether segment s stays valid with v added to it. */
+	boolean fitsSegment(int s, int v) {
+		return isValidSegment(s) && (segments[s] & (1 << v)) == 0;
+	}
+
+
+	static int segmentOf(int x, int y) {
+		return (y / 3) * 3 + x / 3;
+	}
+
+
+	/* Single pass validation of a whole board, without allocating. */
+	static boolean check(int[][] b) {
+		if (b.length != 9)
+			return false;
+		for (int i = 0; i < 9; i++)
+			if (b[i].length != 9)
+				return false;
+		for (int i = 0; i < 9; i++) {
+			int row = 0, column = 0, segment = 0;
+			for (int j = 0; j < 9; j++) {
+				row = occupy(row, b[i][j]);
+				column = occupy(column, b[j][i]);
+				segment = occupy(segment, b[(i / 3) * 3 + j / 3][(i % 3) * 3 + j % 3]);
+				if ((row | column | segment) < 0)
+					return false;
+			}
+		}
+		return true;
+	}
+
+
+	static boolean check(PackedBoard b) {
+		for (int i = 0; i < 9; i++) {
+			int row = 0, column = 0, segment = 0;
+			for (int j = 0; j < 9; j++) {
+				row = occupy(row, b.get(j, i));
+				column = occupy(column, b.get(i, j));
+				segment = occupy(segment, b.get((i % 3) * 3 + j % 3, (i / 3) * 3 + j / 3));
+				if ((row | column | segment) < 0)
+					return false;
+			}
+		}
+		return true;
+	}
+
+
+	/* Returns the mask with v added, or -1 when v is repeated or out of range. */
+	private static int occupy(int mask, int v) {
+		if (mask < 0 || v == 0)
+			return mask;
+		if (v < 0 || v > 9)
+			return -1;
+		int bit = 1 << v;
+		return (mask & bit) != 0 ? -1 : mask | bit;
+	}
+}
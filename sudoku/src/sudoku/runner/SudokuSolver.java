@@ -0,0 +1,35 @@
+package sudoku.runner;
+
+import java.util.function.Consumer;
+
+/**
+ * Common interface of the solving engines. Engines keep their working
+ * buffers between calls, so an instance must not be shared between threads.
+ */
+interface SudokuSolver {
+
+	/**
+	 * Solves b, writing the first solution found into solution.
+	 * Returns false (leaving solution untouched) when b has no solution.
+	 */
+	boolean solve(PackedBoard b, PackedBoard solution);
+
+	/**
+	 * Counts the solutions of b, stopping as soon as limit solutions are found.
+	 */
+	int countSolutions(PackedBoard b, int limit);
+
+	/**
+	 * Passes every solution of b, up to limit of them, to action and returns how
+	 * many were found. The board given to action is reused between calls.
+	 */
+	int enumerate(PackedBoard b, int limit, Consumer<PackedBoard> action);
+
+	/**
+	 * Checks whether b has exactly one solution, stopping the search as soon as
+	 * a second one is found.
+	 */
+	default boolean isUnique(PackedBoard b) {
+		return countSolutions(b, 2) == 1;
+	}
+}
@@ -3,10 +3,13 @@ package sudoku.runner;
 class SudokuTest {
 	public static void main(String[] args) {
 		Sudoku sudoku = new Sudoku("example1.sud", 0.5);
-		/* Functions:
+		/* A new board can also be generated without a file: new Sudoku(0.5);
+		 * Functions:
 		 * sudoku.Play(x, y, number); 
 		 * sudoku.Random();
 		 * sudoku.Undo();
+		 * sudoku.Redo();
+		 * sudoku.Solve();
 		 * sudoku.Reset();
 		 * ↓↓↓ Run a function here and the result will be displayed in the output image. */
 		
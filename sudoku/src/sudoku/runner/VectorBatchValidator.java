@@ -0,0 +1,54 @@
+package sudoku.runner;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The vector path of BoardBatch.validate: each lane is a board, and a house
+ * is checked for a whole vector of boards with 9 loads, shifts and ors.
+ * Only loaded when jdk.incubator.vector is present.
+ */
+final class VectorBatchValidator {
+	private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+
+	private VectorBatchValidator() {
+	}
+
+
+	/* Narrow vectors (or none in hardware) are slower than the scalar path. */
+	static boolean usable() {
+		return SPECIES.length() >= 8;
+	}
+
+
+	static void validate(BoardBatch batch, long[] valid) {
+		short[] cells = batch.cells();
+		int capacity = batch.capacity(), lanes = SPECIES.length();
+		ShortVector one = ShortVector.broadcast(SPECIES, (short) 1);
+
+		for (int k = 0; k < capacity; k += lanes) {
+			VectorMask<Short> bad = SPECIES.maskAll(false);
+			for (int h = 0; h < 27; h++) {
+				ShortVector seen = ShortVector.zero(SPECIES), repeated = seen;
+				for (int i = 0; i < 9; i++) {
+					ShortVector v = ShortVector.fromArray(SPECIES, cells, BoardBatch.HOUSES[h][i] * capacity + k);
+					ShortVector bit = one.lanewise(VectorOperators.LSHL, v.and((short) 15));
+					bad = bad.or(v.compare(VectorOperators.UNSIGNED_GT, 9));
+					repeated = repeated.or(seen.and(bit));
+					seen = seen.or(bit);
+				}
+				bad = bad.or(repeated.and((short) ~1).compare(VectorOperators.NE, 0));
+			}
+			long good = ~bad.toLong() & (-1L >>> (64 - lanes));
+			valid[k >>> 6] = (valid[k >>> 6] & ~(-1L >>> (64 - lanes) << k)) | good << k;
+		}
+		int size = batch.size();
+		if ((size & 63) != 0)
+			valid[size >>> 6] &= -1L >>> (64 - (size & 63));
+		for (int w = (size + 63) >>> 6; w < valid.length; w++)
+			valid[w] = 0;
+	}
+}